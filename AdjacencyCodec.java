@@ -0,0 +1,270 @@
+/*================================================================================
+ * Name: PageRank Calculator
+ * Author: Yiwei CHEN
+ * Job Type: Hadoop Custom JAR
+ * Description:
+ *     Calculate PageRank values of all nodes, then find the top 10.
+ *-------------------------------------------------------------------------------
+ * Usage:
+ *     hadoop jar <JAR Path> [-D <Option>=<Value> ...] <Input Path> <Output Path>
+ * Options:
+ *     rank_encoding    Encoding of PR contributions in the shuffle of the
+ *                      PageRank calculation: double (default), float, fixed
+ *     adjacency_format Form of the out-link lists in the intermediate data:
+ *                      plain (default), compressed (about 2 times smaller
+ *                      on R-MAT graphs, see AdjacencyCodec)
+ *     planner          Sample the input and choose the engine, reducer counts
+ *                      and combiner automatically: off (default), on
+ *     map_threads      Threads per map task of the PageRank calculation, run
+ *                      with MultithreadedMapper: 1 (default)
+ *     map_batch_size   Target nodes whose contributions PageRankMapper adds up
+ *                      before writing: 0 (default, no batching)
+ *     prune            Strip dead ends before iterating and back-fill them
+ *                      afterwards: off (default), on
+ *     prune_max_rounds Most pruning rounds, each strips one more level of the
+ *                      chains leading to dead ends: 10 (default)
+ *     prune_min_fraction
+ *                      Stop pruning after a round that kills less than this
+ *                      fraction of the graph's nodes: 0.01 (default)
+ *-------------------------------------------------------------------------------
+ * MapReduce Jobs:
+ *     1) Initialization
+ *        Mapper: InitMapper
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: InitReducer
+ *     2) Dead-end pruning (iterated, with prune on)
+ *        Mapper: PruneMapper
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Reducer: PruneReducer
+ *     3) PageRank calculation (iterated)
+ *        Mapper: PageRankMapper
+ *        MapRunner: MultithreadedMapper (when map_threads > 1)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Combiner: PageRankCombiner (when chosen by PreflightPlanner)
+ *        Reducer: PageRankReducer
+ *        MapOutputKey: RankKey
+ *        MapOutputValue: RankWritable
+ *     4) Results check (iterated)
+ *        Mapper: CheckMapper
+ *        Reducer: CheckReducer
+ *        ReducerNum: 1
+ *     5) Back-fill of pruned nodes (iterated, with prune on)
+ *        Mapper: (IdentityMapper by default)
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: FillReducer
+ *     6) Output all PageRank
+ *        Mapper: OutputMapper
+ *        Reducer: (IdentityReducer by default)
+ *     7) Output top 10 PageRank
+ *        Mapper: OutputTop10Mapper
+ *        Reducer: OutputTop10Reducer
+ *        ReducerNum: 1
+ *-------------------------------------------------------------------------------
+ * AdjacencyCodec (this file):
+ *     Compressed form of an out-link list, used in place of <NodeB1>|<NodeB2>|...
+ * when adjacency_format is compressed. The sorted node ids are split into
+ * intervals (runs of at least MIN_INTERVAL consecutive ids) and residuals, both
+ * gap encoded against the source node, then written as URL-safe Base64 behind
+ * the PREFIX character so the text record stays parsable.
+ *     Binary layout (all numbers are Hadoop vlongs):
+ *              <IntervalCount> (<LeftGap> <Length - MIN_INTERVAL>)...
+ *              <ResidualCount> <FirstGap> <Gap>...
+ *     The first gap of each part is relative to the source node and may be
+ * negative. Later interval gaps are relative to the end of the previous
+ * interval, residual gaps to the previous residual (duplicated links give 0).
+ *     After dead-end pruning a list may start with @<FullDegree>@, the out-degree
+ * of the node in the whole graph, when some of its out-links were cut (see
+ * PruneReducer). The helpers below read both forms.
+ *     The gain depends on how close the ids of linked nodes are. On R-MAT
+ * graphs with random ids the lists come out about 1.9 to 2 times smaller than
+ * the plain form, far from the ratios of web graphs with crawl-ordered ids:
+ * the gaps stay large, and Base64 adds a third on top of the binary size.
+ * There is no reference copying from similar lists, each list is encoded on
+ * its own.
+ *================================================================================
+ */
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+
+import org.apache.hadoop.io.*;
+
+public class AdjacencyCodec {
+    public static final String PREFIX = "~";
+    public static final int MIN_INTERVAL = 3;
+    
+    /* value of each URL-safe Base64 character, -1 for the others */
+    private static final byte[] BASE64 = new byte[128];
+    static {
+        Arrays.fill(BASE64, (byte) -1);
+        String chars = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+        for (int i = 0; i < chars.length(); i++) {
+            BASE64[chars.charAt(i)] = (byte) i;
+        }
+    }
+    
+    /* buffers of the instance decoder, grown as needed */
+    private byte[] raw = new byte[64];
+    private long[] ids = new long[16];
+    
+    public static boolean isEncoded(String s) {
+        return s.startsWith(PREFIX);
+    }
+    
+    /* the @<FullDegree>@ of a list, or -1 when it has none */
+    public static int fullDegree(String list) {
+        if (!list.startsWith("@")) return -1;
+        return Integer.parseInt(list.substring(1, list.indexOf('@', 1)));
+    }
+    
+    /* a list without its @<FullDegree>@ */
+    public static String stripDegree(String list) {
+        if (!list.startsWith("@")) return list;
+        return list.substring(list.indexOf('@', 1) + 1);
+    }
+    
+    /* node ids of a plain or compressed list without @<FullDegree>@ */
+    public static String[] toIds(String fromId, String list) throws IOException {
+        if (list.isEmpty()) return new String[0];
+        if (!isEncoded(list)) return list.split("\\|");
+        long[] ids = decode(Long.parseLong(fromId), list);
+        String[] strs = new String[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            strs[i] = String.valueOf(ids[i]);
+        }
+        return strs;
+    }
+    
+    /* encode the out-links of node from, ids will be sorted in place */
+    public static String encode(long from, long[] ids, int count) throws IOException {
+        Arrays.sort(ids, 0, count);
+        // split sorted ids into intervals and residuals
+        long[] lefts = new long[count];
+        int[] lengths = new int[count];
+        long[] residuals = new long[count];
+        int intervalNum = 0;
+        int residualNum = 0;
+        int i = 0;
+        while (i < count) {
+            int j = i;
+            int len = 1;
+            int k = i + 1;
+            while (k < count && ids[k] - ids[j] <= 1) {
+                if (ids[k] == ids[j] + 1) {
+                    len++;
+                    j = k;
+                }
+                k++;
+            }
+            if (len >= MIN_INTERVAL) {
+                lefts[intervalNum] = ids[i];
+                lengths[intervalNum] = len;
+                intervalNum++;
+                // duplicates inside the run stay as residuals
+                long prev = ids[i];
+                for (int m = i + 1; m < k; m++) {
+                    if (ids[m] == prev) residuals[residualNum++] = ids[m];
+                    prev = ids[m];
+                }
+                i = k;
+            } else {
+                residuals[residualNum++] = ids[i];
+                i++;
+            }
+        }
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        WritableUtils.writeVLong(out, intervalNum);
+        long prev = from;
+        for (int m = 0; m < intervalNum; m++) {
+            WritableUtils.writeVLong(out, m == 0 ? lefts[m] - from : lefts[m] - prev - 2);
+            WritableUtils.writeVLong(out, lengths[m] - MIN_INTERVAL);
+            prev = lefts[m] + lengths[m] - 1;
+        }
+        Arrays.sort(residuals, 0, residualNum);
+        WritableUtils.writeVLong(out, residualNum);
+        prev = from;
+        for (int m = 0; m < residualNum; m++) {
+            WritableUtils.writeVLong(out, residuals[m] - prev);
+            prev = residuals[m];
+        }
+        out.close();
+        return PREFIX + Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+    
+    /* decode the out-links of node from, in no particular order */
+    public static long[] decode(long from, String s) throws IOException {
+        AdjacencyCodec codec = new AdjacencyCodec();
+        byte[] bytes = s.getBytes("UTF-8");
+        int count = codec.decode(from, bytes, 0, bytes.length);
+        return Arrays.copyOf(codec.ids, count);
+    }
+    
+    /* the ids of the last decode(long, byte[], int, int) call */
+    public long[] getIds() {
+        return ids;
+    }
+    
+    /* decode the list in bytes (PREFIX included) into getIds() and return the
+       id count, reusing this codec's buffers */
+    public int decode(long from, byte[] bytes, int start, int len) throws IOException {
+        int rawLen = unbase64(bytes, start + PREFIX.length(), len - PREFIX.length());
+        int pos = 0;
+        int intervalNum = (int) WritableComparator.readVLong(raw, pos);
+        pos += WritableUtils.decodeVIntSize(raw[pos]);
+        int n = 0;
+        long prev = from;
+        for (int m = 0; m < intervalNum; m++) {
+            long gap = WritableComparator.readVLong(raw, pos);
+            pos += WritableUtils.decodeVIntSize(raw[pos]);
+            int length = (int) WritableComparator.readVLong(raw, pos) + MIN_INTERVAL;
+            pos += WritableUtils.decodeVIntSize(raw[pos]);
+            long left = m == 0 ? from + gap : prev + gap + 2;
+            grow(n + length);
+            for (int l = 0; l < length; l++) {
+                ids[n++] = left + l;
+            }
+            prev = left + length - 1;
+        }
+        int residualNum = (int) WritableComparator.readVLong(raw, pos);
+        pos += WritableUtils.decodeVIntSize(raw[pos]);
+        grow(n + residualNum);
+        prev = from;
+        for (int m = 0; m < residualNum; m++) {
+            prev += WritableComparator.readVLong(raw, pos);
+            pos += WritableUtils.decodeVIntSize(raw[pos]);
+            ids[n++] = prev;
+        }
+        if (pos > rawLen) throw new IOException("Truncated compressed list");
+        return n;
+    }
+    
+    private void grow(int size) {
+        if (size > ids.length) ids = Arrays.copyOf(ids, Math.max(size, ids.length * 2));
+    }
+    
+    /* URL-safe Base64 without padding into raw, return the byte count */
+    private int unbase64(byte[] bytes, int start, int len) throws IOException {
+        if (raw.length < len * 3 / 4) raw = new byte[len * 3 / 4 * 2];
+        int n = 0;
+        int acc = 0;
+        int bits = 0;
+        for (int i = start; i < start + len; i++) {
+            int v = bytes[i] < 0 ? -1 : BASE64[bytes[i]];
+            if (v < 0) throw new IOException("Bad character in compressed list");
+            acc = (acc << 6) | v;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                raw[n++] = (byte) (acc >> bits);
+                acc &= (1 << bits) - 1;
+            }
+        }
+        return n;
+    }
+}
@@ -0,0 +1,165 @@
+/*================================================================================
+ * Name: PageRank Calculator
+ * Author: Yiwei CHEN
+ * Job Type: Hadoop Custom JAR
+ * Description:
+ *     Calculate PageRank values of all nodes, then find the top 10.
+ *-------------------------------------------------------------------------------
+ * Usage:
+ *     hadoop jar <JAR Path> [-D <Option>=<Value> ...] <Input Path> <Output Path>
+ * Options:
+ *     rank_encoding    Encoding of PR contributions in the shuffle of the
+ *                      PageRank calculation: double (default), float, fixed
+ *     adjacency_format Form of the out-link lists in the intermediate data:
+ *                      plain (default), compressed (about 2 times smaller
+ *                      on R-MAT graphs, see AdjacencyCodec)
+ *     planner          Sample the input and choose the engine, reducer counts
+ *                      and combiner automatically: off (default), on
+ *     map_threads      Threads per map task of the PageRank calculation, run
+ *                      with MultithreadedMapper: 1 (default)
+ *     map_batch_size   Target nodes whose contributions PageRankMapper adds up
+ *                      before writing: 0 (default, no batching)
+ *     prune            Strip dead ends before iterating and back-fill them
+ *                      afterwards: off (default), on
+ *     prune_max_rounds Most pruning rounds, each strips one more level of the
+ *                      chains leading to dead ends: 10 (default)
+ *     prune_min_fraction
+ *                      Stop pruning after a round that kills less than this
+ *                      fraction of the graph's nodes: 0.01 (default)
+ *-------------------------------------------------------------------------------
+ * MapReduce Jobs:
+ *     1) Initialization
+ *        Mapper: InitMapper
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: InitReducer
+ *     2) Dead-end pruning (iterated, with prune on)
+ *        Mapper: PruneMapper
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Reducer: PruneReducer
+ *     3) PageRank calculation (iterated)
+ *        Mapper: PageRankMapper
+ *        MapRunner: MultithreadedMapper (when map_threads > 1)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Combiner: PageRankCombiner (when chosen by PreflightPlanner)
+ *        Reducer: PageRankReducer
+ *        MapOutputKey: RankKey
+ *        MapOutputValue: RankWritable
+ *     4) Results check (iterated)
+ *        Mapper: CheckMapper
+ *        Reducer: CheckReducer
+ *        ReducerNum: 1
+ *     5) Back-fill of pruned nodes (iterated, with prune on)
+ *        Mapper: (IdentityMapper by default)
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: FillReducer (this file)
+ *     6) Output all PageRank
+ *        Mapper: OutputMapper
+ *        Reducer: (IdentityReducer by default)
+ *     7) Output top 10 PageRank
+ *        Mapper: OutputTop10Mapper
+ *        Reducer: OutputTop10Reducer
+ *        ReducerNum: 1
+ *-------------------------------------------------------------------------------
+ * FillReducer (this file):
+ *     Input:   Key: (Text) <NodeA>
+ *              Value: (Text) <CurrPR>|<LastPR>$@<FullDegree>@<NodeB1>|...  (core)
+ *              Value: (Text) ><NodeB>                         (cut link)
+ *              Value: (Text) #<Round>$<FullDegree>            (dead node)
+ *              Value: (Text) #<Round>$<FullDegree>$<Partial>$<NodeB1>|...
+ *              Value: (Text) +<PR_received>
+ *     Output:  Key: (Text) <NodeB>
+ *              Value: (Text) +<PR_received>
+ *              Key: (Text) <NodeA>
+ *              Value: (Text) #<Round>$<FullDegree>$<Partial>$<NodeB1>|...
+ *     Named output:
+ *              filled: <NodeA> <PR>|<PR>$
+ *     Back-fill of the nodes cut by dead-end pruning, after the core converged
+ * with each_leak 0. Pass fill_round 0 joins the core PRs with the cut links
+ * into contributions, and each dead node with its cut links. Then one pass per
+ * pruning round, from the last round down to 1, adds up the contributions a
+ * dead node has received; the nodes of that round get all of theirs by then
+ * (a dead node is only linked from the core and from nodes that died later),
+ * so their PR is final and they send their own contributions on. Filled nodes
+ * are written in the PageRank output format, so CheckMapper and OutputMapper
+ * read them like the core.
+ *================================================================================
+ */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.io.*;
+import org.apache.hadoop.mapreduce.*;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+
+public class FillReducer extends Reducer<Text, Text, Text, Text> {
+    private MultipleOutputs<Text, Text> mos;
+    private int round = 0;
+    
+    protected void setup(Context context) {
+        mos = new MultipleOutputs<Text, Text>(context);
+        round = context.getConfiguration().getInt("fill_round", 0);
+    }
+    
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        mos.close();
+    }
+    
+    public void reduce(Text key, Iterable<Text> values, Context context)
+            throws IOException, InterruptedException {
+        String core = null;
+        String state = null;
+        List<String> cutIds = new ArrayList<String>();
+        double partial = 0;
+        for (Text val : values) {
+            String s = val.toString();
+            if (s.startsWith(">")) {
+                cutIds.add(s.substring(1));
+            } else if (s.startsWith("#")) {
+                state = s.substring(1);
+            } else if (s.startsWith("+")) {
+                partial += Double.parseDouble(s.substring(1));
+            } else {
+                core = s;
+            }
+        }
+        if (core != null) {
+            double pr = Double.parseDouble(core.split("\\|")[0]);
+            int degree = AdjacencyCodec.fullDegree(core.substring(core.indexOf('$') + 1));
+            for (String cutId : cutIds) {
+                context.write(new Text(cutId), new Text("+" + String.valueOf(pr * 0.9 / degree)));
+            }
+            return;
+        }
+        if (state == null) return;
+        
+        String[] args = state.split("\\$", -1);
+        int deadRound = Integer.parseInt(args[0]);
+        int degree = Integer.parseInt(args[1]);
+        String toIds;
+        if (args.length >= 4) {
+            partial += Double.parseDouble(args[2]);
+            toIds = args[3];
+        } else {
+            StringBuilder sb = new StringBuilder();
+            for (String cutId : cutIds) {
+                if (sb.length() > 0) sb.append('|');
+                sb.append(cutId);
+            }
+            toIds = sb.toString();
+        }
+        if (deadRound != round) {
+            context.write(key, new Text("#" + deadRound + "$" + degree + "$"
+                    + String.valueOf(partial) + "$" + toIds));
+            return;
+        }
+        double pr = 0.1 + partial;
+        mos.write("filled", key, new Text(String.valueOf(pr) + "|" + String.valueOf(pr) + "$"));
+        if (toIds.isEmpty()) return;
+        for (String toId : toIds.split("\\|")) {
+            context.write(new Text(toId), new Text("+" + String.valueOf(pr * 0.9 / degree)));
+        }
+    }
+}
@@ -6,25 +6,58 @@
  *     Calculate PageRank values of all nodes, then find the top 10.
  *-------------------------------------------------------------------------------
  * Usage:
- *     hadoop jar <JAR Path> <Input Path> <Output Path>
+ *     hadoop jar <JAR Path> [-D <Option>=<Value> ...] <Input Path> <Output Path>
+ * Options:
+ *     rank_encoding    Encoding of PR contributions in the shuffle of the
+ *                      PageRank calculation: double (default), float, fixed
+ *     adjacency_format Form of the out-link lists in the intermediate data:
+ *                      plain (default), compressed (about 2 times smaller
+ *                      on R-MAT graphs, see AdjacencyCodec)
+ *     planner          Sample the input and choose the engine, reducer counts
+ *                      and combiner automatically: off (default), on
+ *     map_threads      Threads per map task of the PageRank calculation, run
+ *                      with MultithreadedMapper: 1 (default)
+ *     map_batch_size   Target nodes whose contributions PageRankMapper adds up
+ *                      before writing: 0 (default, no batching)
+ *     prune            Strip dead ends before iterating and back-fill them
+ *                      afterwards: off (default), on
+ *     prune_max_rounds Most pruning rounds, each strips one more level of the
+ *                      chains leading to dead ends: 10 (default)
+ *     prune_min_fraction
+ *                      Stop pruning after a round that kills less than this
+ *                      fraction of the graph's nodes: 0.01 (default)
  *-------------------------------------------------------------------------------
  * MapReduce Jobs:
  *     1) Initialization
  *        Mapper: InitMapper (this file)
  *        Partitioner: KeyFieldBasedPartitioner
  *        Reducer: InitReducer
- *     2) PageRank calculation (iterated)
+ *     2) Dead-end pruning (iterated, with prune on)
+ *        Mapper: PruneMapper
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Reducer: PruneReducer
+ *     3) PageRank calculation (iterated)
  *        Mapper: PageRankMapper
- *        Partitioner: KeyFieldBasedPartitioner
+ *        MapRunner: MultithreadedMapper (when map_threads > 1)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Combiner: PageRankCombiner (when chosen by PreflightPlanner)
  *        Reducer: PageRankReducer
- *     3) Results check (iterated)
+ *        MapOutputKey: RankKey
+ *        MapOutputValue: RankWritable
+ *     4) Results check (iterated)
  *        Mapper: CheckMapper
  *        Reducer: CheckReducer
  *        ReducerNum: 1
- *     4) Output all PageRank
+ *     5) Back-fill of pruned nodes (iterated, with prune on)
+ *        Mapper: (IdentityMapper by default)
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: FillReducer
+ *     6) Output all PageRank
  *        Mapper: OutputMapper
  *        Reducer: (IdentityReducer by default)
- *     5) Output top 10 PageRank
+ *     7) Output top 10 PageRank
  *        Mapper: OutputTop10Mapper
  *        Reducer: OutputTop10Reducer
  *        ReducerNum: 1
@@ -6,25 +6,58 @@
  *     Calculate PageRank values of all nodes, then find the top 10.
  *-------------------------------------------------------------------------------
  * Usage:
- *     hadoop jar <JAR Path> <Input Path> <Output Path>
+ *     hadoop jar <JAR Path> [-D <Option>=<Value> ...] <Input Path> <Output Path>
+ * Options:
+ *     rank_encoding    Encoding of PR contributions in the shuffle of the
+ *                      PageRank calculation: double (default), float, fixed
+ *     adjacency_format Form of the out-link lists in the intermediate data:
+ *                      plain (default), compressed (about 2 times smaller
+ *                      on R-MAT graphs, see AdjacencyCodec)
+ *     planner          Sample the input and choose the engine, reducer counts
+ *                      and combiner automatically: off (default), on
+ *     map_threads      Threads per map task of the PageRank calculation, run
+ *                      with MultithreadedMapper: 1 (default)
+ *     map_batch_size   Target nodes whose contributions PageRankMapper adds up
+ *                      before writing: 0 (default, no batching)
+ *     prune            Strip dead ends before iterating and back-fill them
+ *                      afterwards: off (default), on
+ *     prune_max_rounds Most pruning rounds, each strips one more level of the
+ *                      chains leading to dead ends: 10 (default)
+ *     prune_min_fraction
+ *                      Stop pruning after a round that kills less than this
+ *                      fraction of the graph's nodes: 0.01 (default)
  *-------------------------------------------------------------------------------
  * MapReduce Jobs:
  *     1) Initialization
  *        Mapper: InitMapper
  *        Partitioner: KeyFieldBasedPartitioner
  *        Reducer: InitReducer
- *     2) PageRank calculation (iterated)
+ *     2) Dead-end pruning (iterated, with prune on)
+ *        Mapper: PruneMapper
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Reducer: PruneReducer
+ *     3) PageRank calculation (iterated)
  *        Mapper: PageRankMapper
- *        Partitioner: KeyFieldBasedPartitioner
+ *        MapRunner: MultithreadedMapper (when map_threads > 1)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Combiner: PageRankCombiner (when chosen by PreflightPlanner)
  *        Reducer: PageRankReducer
- *     3) Results check (iterated)
+ *        MapOutputKey: RankKey
+ *        MapOutputValue: RankWritable
+ *     4) Results check (iterated)
  *        Mapper: CheckMapper
  *        Reducer: CheckReducer
  *        ReducerNum: 1
- *     4) Output all PageRank
+ *     5) Back-fill of pruned nodes (iterated, with prune on)
+ *        Mapper: (IdentityMapper by default)
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: FillReducer
+ *     6) Output all PageRank
  *        Mapper: OutputMapper
  *        Reducer: (IdentityReducer by default)
- *     5) Output top 10 PageRank
+ *     7) Output top 10 PageRank
  *        Mapper: OutputTop10Mapper
  *        Reducer: OutputTop10Reducer
  *        ReducerNum: 1
@@ -36,20 +69,42 @@
  * /tmp/_prtmp/ in the HDFS and will be cleaned up after the calculation is done.
  * The program will produce /all and /top10 directories containing all nodes'
  * PageRank and the top 10 node respectively.
+ *     With the planner option the jobs are tuned by PreflightPlanner from a sample
+ * of the input.
+ *     With the prune option, nodes without out-links and the chains leading only
+ * to them are stripped round by round after initialization, and the iterations
+ * run on the remaining core with each_leak 0 and every core node's full
+ * out-degree. Every PR is then a common factor times the solution of
+ * x = 1 + 0.9 * sum(x_u / out_u), so the cut nodes are back-filled one pruning
+ * round at a time, and the output scales all PRs to sum to the node count.
+ *     Every pruning round shuffles the whole graph plus one reverse link per
+ * edge, about as much as one PageRank iteration, and the last round only
+ * applies notices. It pays off only when the dead ends carry a good share of
+ * the edges: on a scale-16 R-MAT graph 4 rounds of about 23.5 MB each cut the
+ * shuffle of an iteration only from 25.68 MB to 25.46 MB, and the total
+ * shuffle grew from 222 MB to 298 MB. Pruning stops after a round that kills
+ * fewer than prune_min_fraction of the nodes, as the later rounds of a chain
+ * strip ever fewer nodes.
  *================================================================================
  */
 import java.io.IOException;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.hadoop.fs.*;
 import org.apache.hadoop.conf.*;
 import org.apache.hadoop.io.*;
 import org.apache.hadoop.mapreduce.*;
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.KeyValueTextInputFormat;
 import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.map.MultithreadedMapper;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 import org.apache.hadoop.mapreduce.lib.partition.KeyFieldBasedPartitioner;
+import org.apache.hadoop.util.GenericOptionsParser;
 import org.apache.hadoop.util.LineReader;
 
 public class PageRank {
@@ -57,16 +112,55 @@ public class PageRank {
     private static String outputPath;
     private static String tmpPath = "/tmp/_prtmp/";
     private static NumberFormat format = NumberFormat.getInstance();
+    private static Configuration baseConf = new Configuration();
+    private static PreflightPlanner plan = null;
+    
+    /* wall time (ms) and shuffle bytes of every phase, for PageRankBenchmark */
+    private static List<String> phaseNames = new ArrayList<String>();
+    private static List<long[]> phaseStats = new ArrayList<long[]>();
     private static int iterationNum = 0;
     
     private static double maxChangeRate = 0;
     private static int nodeCount = 0;
     private static double totalPR = 0;
     
+    private static boolean pruned = false;
+    private static int pruneRounds = 0;
+    
+    /* run a job and keep its wall time and shuffle bytes */
+    private static void runJob(Job job) throws Exception {
+        long start = System.currentTimeMillis();
+        job.waitForCompletion(true);
+        long shuffle = 0;
+        Counters counters = job.getCounters();
+        if (counters != null) {
+            shuffle = counters.findCounter(TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES).getValue();
+        }
+        phaseNames.add(job.getJobName());
+        phaseStats.add(new long[] {System.currentTimeMillis() - start, shuffle});
+    }
+    
+    public static List<String> getPhaseNames() {
+        return phaseNames;
+    }
+    
+    public static List<long[]> getPhaseStats() {
+        return phaseStats;
+    }
+    
+    public static int getIterationNum() {
+        return iterationNum;
+    }
+    
     /* run initialization MapReduce job */
     private static void init() throws Exception {
         iterationNum = 0;
-        Configuration conf = new Configuration();
+        maxChangeRate = 0;
+        nodeCount = 0;
+        totalPR = 0;
+        pruned = false;
+        pruneRounds = 0;
+        Configuration conf = new Configuration(baseConf);
         
         Job job = new Job(conf, "PageRank_init");
         job.setJarByClass(PageRank.class);
@@ -78,6 +172,7 @@ public class PageRank {
         job.setMapOutputValueClass(Text.class);
         job.setPartitionerClass(KeyFieldBasedPartitioner.class);
         job.setReducerClass(InitReducer.class);
+        if (plan != null) plan.configure(job, PreflightPlanner.INIT);
         
         job.setInputFormatClass(TextInputFormat.class);
         job.setOutputFormatClass(TextOutputFormat.class);
@@ -86,13 +181,137 @@ public class PageRank {
         FileOutputFormat.setOutputPath(job,
                 new Path(tmpPath + format.format(iterationNum) + "/"));
         
-        job.waitForCompletion(true);
+        runJob(job);
+    }
+    
+    /* add a glob of named output files, if any of them was written */
+    private static void addOutputs(Job job, String glob) throws IOException {
+        FileStatus[] files = FileSystem.get(baseConf).globStatus(new Path(glob));
+        if (files != null && files.length > 0) {
+            FileInputFormat.addInputPath(job, new Path(glob));
+        }
+    }
+    
+    /* run one dead-end pruning round, return the counts of nodes it killed and
+       of nodes it started with */
+    private static long[] pruneRound(int round, boolean kill) throws Exception {
+        Configuration conf = new Configuration(baseConf);
+        conf.setInt("prune_round", round);
+        conf.setBoolean("prune_kill", kill);
+        
+        Job job = new Job(conf, "PageRank_prune_" + format.format(round));
+        job.setJarByClass(PageRank.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+        
+        job.setMapperClass(PruneMapper.class);
+        job.setMapOutputKeyClass(RankKey.class);
+        job.setMapOutputValueClass(Text.class);
+        job.setPartitionerClass(RankKey.NodePartitioner.class);
+        job.setGroupingComparatorClass(RankKey.GroupComparator.class);
+        job.setReducerClass(PruneReducer.class);
+        if (plan != null) plan.configure(job, PreflightPlanner.INIT);
+        
+        job.setInputFormatClass(TextInputFormat.class);
+        job.setOutputFormatClass(TextOutputFormat.class);
+        MultipleOutputs.addNamedOutput(job, "cut", TextOutputFormat.class, Text.class, Text.class);
+        MultipleOutputs.addNamedOutput(job, "dead", TextOutputFormat.class, Text.class, Text.class);
+        MultipleOutputs.addNamedOutput(job, "notice", TextOutputFormat.class, Text.class, Text.class);
+        
+        if (round == 1) {
+            FileInputFormat.addInputPath(job,
+                    new Path(tmpPath + format.format(iterationNum) + "/"));
+        } else {
+            String last = tmpPath + "prune_" + format.format(round - 1) + "/";
+            FileInputFormat.addInputPath(job, new Path(last + "part-*"));
+            addOutputs(job, last + "notice-*");
+        }
+        FileOutputFormat.setOutputPath(job,
+                new Path(tmpPath + "prune_" + format.format(round) + "/"));
+        runJob(job);
+        Counters counters = job.getCounters();
+        return new long[] {counters.findCounter("PageRank", "PRUNED").getValue(),
+                counters.findCounter("PageRank", "NODES").getValue()};
+    }
+    
+    /* strip dead ends, the live records of the last round become iteration 0 */
+    private static void prune() throws Exception {
+        int maxRounds = baseConf.getInt("prune_max_rounds", 10);
+        double minFraction = baseConf.getFloat("prune_min_fraction", 0.01f);
+        int round = 1;
+        boolean kill = true;
+        long nodes = 0;
+        while (true) {
+            long[] counts = pruneRound(round, kill);
+            long dead = counts[0];
+            if (round == 1) nodes = counts[1];
+            if (dead > 0) pruneRounds = round;
+            if (!kill || dead == 0) break;
+            // one more round without killing applies the last notices
+            if (round == maxRounds || dead < minFraction * nodes) kill = false;
+            round++;
+        }
+        pruned = true;
+        
+        FileSystem fs = FileSystem.get(baseConf);
+        Path core = new Path(tmpPath + format.format(iterationNum) + "/");
+        fs.delete(core, true);
+        fs.mkdirs(core);
+        for (FileStatus st : fs.globStatus(new Path(tmpPath + "prune_" + format.format(round) + "/part-*"))) {
+            fs.rename(st.getPath(), new Path(core, st.getPath().getName()));
+        }
+    }
+    
+    /* run one back-fill pass, round 0 joins the core PRs with the cut links */
+    private static void fill(int round) throws Exception {
+        Configuration conf = new Configuration(baseConf);
+        conf.setInt("fill_round", round);
+        
+        Job job = new Job(conf, "PageRank_fill_" + format.format(round));
+        job.setJarByClass(PageRank.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+        
+        job.setMapOutputKeyClass(Text.class);
+        job.setMapOutputValueClass(Text.class);
+        job.setPartitionerClass(KeyFieldBasedPartitioner.class);
+        job.setReducerClass(FillReducer.class);
+        
+        job.setInputFormatClass(KeyValueTextInputFormat.class);
+        job.setOutputFormatClass(TextOutputFormat.class);
+        MultipleOutputs.addNamedOutput(job, "filled", TextOutputFormat.class, Text.class, Text.class);
+        
+        if (round == 0) {
+            FileInputFormat.addInputPath(job,
+                    new Path(tmpPath + format.format(iterationNum) + "/"));
+            addOutputs(job, tmpPath + "prune_*/cut-*");
+            addOutputs(job, tmpPath + "prune_*/dead-*");
+        } else {
+            int last = round == pruneRounds ? 0 : round + 1;
+            FileInputFormat.addInputPath(job,
+                    new Path(tmpPath + "fill_" + format.format(last) + "/part-*"));
+        }
+        FileOutputFormat.setOutputPath(job,
+                new Path(tmpPath + "fill_" + format.format(round) + "/"));
+        runJob(job);
+    }
+    
+    /* back-fill the pruned nodes from the last pruning round down to 1 */
+    private static void backfill() throws Exception {
+        if (pruneRounds == 0) return;
+        fill(0);
+        for (int round = pruneRounds; round >= 1; round--) {
+            fill(round);
+        }
     }
     
     /* run one PageRank iteration */
     private static void calc() throws Exception {
-        Configuration conf = new Configuration();
-        if (nodeCount > 0) {
+        Configuration conf = new Configuration(baseConf);
+        if (pruned) {
+            // the leak is left out on the core, see the class comment
+            conf.set("each_leak", "0");
+        } else if (nodeCount > 0) {
             conf.set("each_leak", String.valueOf((nodeCount - totalPR) / nodeCount));
         } else {
             conf.set("each_leak", "0");
@@ -103,11 +322,20 @@ public class PageRank {
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(Text.class);
         
-        job.setMapperClass(PageRankMapper.class);
-        job.setMapOutputKeyClass(Text.class);
-        job.setMapOutputValueClass(Text.class);
-        job.setPartitionerClass(KeyFieldBasedPartitioner.class);
+        int threads = conf.getInt("map_threads", 1);
+        if (threads > 1) {
+            job.setMapperClass(MultithreadedMapper.class);
+            MultithreadedMapper.setMapperClass(job, PageRankMapper.class);
+            MultithreadedMapper.setNumberOfThreads(job, threads);
+        } else {
+            job.setMapperClass(PageRankMapper.class);
+        }
+        job.setMapOutputKeyClass(RankKey.class);
+        job.setMapOutputValueClass(RankWritable.class);
+        job.setPartitionerClass(RankKey.NodePartitioner.class);
+        job.setGroupingComparatorClass(RankKey.GroupComparator.class);
         job.setReducerClass(PageRankReducer.class);
+        if (plan != null) plan.configure(job, PreflightPlanner.CALC);
         
         job.setInputFormatClass(TextInputFormat.class);
         job.setOutputFormatClass(TextOutputFormat.class);
@@ -117,15 +345,20 @@ public class PageRank {
         FileOutputFormat.setOutputPath(job,
                 new Path(tmpPath + format.format(iterationNum + 1) + "/"));
         
-        job.waitForCompletion(true);
+        runJob(job);
         iterationNum++;
     }
     
     /* run result-check MapReduce job, calculate max change rate, etc */
     private static void check() throws Exception {
-        Configuration conf = new Configuration();
+        check("_check");
+    }
+    
+    /* run result-check MapReduce job, with back-filled nodes unless "_check" */
+    private static void check(String suffix) throws Exception {
+        Configuration conf = new Configuration(baseConf);
         
-        Job job = new Job(conf, "PageRank_" + format.format(iterationNum) + "_check");
+        Job job = new Job(conf, "PageRank_" + format.format(iterationNum) + suffix);
         job.setJarByClass(PageRank.class);
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(Text.class);
@@ -143,16 +376,22 @@ public class PageRank {
         
         FileInputFormat.addInputPath(job,
                 new Path(tmpPath + format.format(iterationNum) + "/"));
+        if (!suffix.equals("_check")) addOutputs(job, tmpPath + "fill_*/filled-*");
         FileOutputFormat.setOutputPath(job,
-                new Path(tmpPath + format.format(iterationNum) + "_check/"));
-        job.waitForCompletion(true);
+                new Path(tmpPath + format.format(iterationNum) + suffix + "/"));
+        runJob(job);
                 
     }
     
     /* read max check results from file */
     private static void readChangeRate() throws IOException {
-        FileSystem fs = FileSystem.get(new Configuration());
-        Path p = new Path(tmpPath + format.format(iterationNum) + "_check/part-r-00000");
+        readChangeRate("_check");
+    }
+    
+    /* read check results of the given check job */
+    private static void readChangeRate(String suffix) throws IOException {
+        FileSystem fs = FileSystem.get(baseConf);
+        Path p = new Path(tmpPath + format.format(iterationNum) + suffix + "/part-r-00000");
         FSDataInputStream is = fs.open(p);
         LineReader in = new LineReader(is);
         Text text = new Text();
@@ -172,8 +411,13 @@ public class PageRank {
     
     /* run output all PageRank MapReduce job */
     private static void outputAll() throws Exception {
-        Configuration conf = new Configuration();
-        conf.set("each_leak", String.valueOf((nodeCount - totalPR) / nodeCount));
+        Configuration conf = new Configuration(baseConf);
+        if (pruned) {
+            conf.set("each_leak", "0");
+            conf.set("rank_scale", String.valueOf(nodeCount / totalPR));
+        } else {
+            conf.set("each_leak", String.valueOf((nodeCount - totalPR) / nodeCount));
+        }
         
         Job job = new Job(conf, "PageRank_all");
         job.setJarByClass(PageRank.class);
@@ -183,20 +427,22 @@ public class PageRank {
         job.setMapperClass(OutputMapper.class);
         job.setMapOutputKeyClass(LongWritable.class);
         job.setMapOutputValueClass(DoubleWritable.class);
+        if (plan != null) plan.configure(job, PreflightPlanner.OUTPUT);
         
         job.setInputFormatClass(TextInputFormat.class);
         job.setOutputFormatClass(TextOutputFormat.class);
         
         FileInputFormat.addInputPath(job,
                 new Path(tmpPath + format.format(iterationNum) + "/"));
+        if (pruned) addOutputs(job, tmpPath + "fill_*/filled-*");
         FileOutputFormat.setOutputPath(job,
                 new Path(outputPath + "/all/"));
-        job.waitForCompletion(true);
+        runJob(job);
     }
     
     /* run output top 10 PageRank MapReduce job */
     private static void outputTop10() throws Exception {
-        Configuration conf = new Configuration();
+        Configuration conf = new Configuration(baseConf);
         
         Job job = new Job(conf, "PageRank_top10");
         job.setJarByClass(PageRank.class);
@@ -217,18 +463,19 @@ public class PageRank {
                 new Path(outputPath + "/all/"));
         FileOutputFormat.setOutputPath(job,
                 new Path(outputPath + "/top10/"));
-        job.waitForCompletion(true);
+        runJob(job);
     }
     
     /* clean up intermediate data */
     private static void cleanUp() throws IOException{
-        FileSystem fs = FileSystem.get(new Configuration());
+        FileSystem fs = FileSystem.get(baseConf);
         Path p = new Path(tmpPath);
         fs.delete(p, true);
     }
     
     /* program entry */
     public static void main(String[] args) throws Exception {
+        args = new GenericOptionsParser(baseConf, args).getRemainingArgs();
         inputPath = args[0];
         outputPath = args[1];
         format = NumberFormat.getInstance();
@@ -236,13 +483,26 @@ public class PageRank {
         format.setMaximumIntegerDigits(4);
         format.setMinimumIntegerDigits(4);
         
+        if (baseConf.get("planner", "off").equals("on")) {
+            long start = System.currentTimeMillis();
+            plan = PreflightPlanner.plan(baseConf, new Path(inputPath));
+            plan.configure(baseConf);
+            phaseNames.add("PageRank_preflight");
+            phaseStats.add(new long[] {System.currentTimeMillis() - start, 0});
+        }
         init();
+        if (baseConf.get("prune", "off").equals("on")) prune();
         for (int i = 0; i < 200; i++) {
             calc();
             check();
             readChangeRate();
             if (maxChangeRate < 0.01) break;
         }
+        if (pruned) {
+            backfill();
+            check("_fill_check");
+            readChangeRate("_fill_check");
+        }
         outputAll();
         outputTop10();
         cleanUp();
@@ -0,0 +1,255 @@
+/*================================================================================
+ * Name: PageRank Calculator
+ * Author: Yiwei CHEN
+ * Job Type: Hadoop Custom JAR
+ * Description:
+ *     Calculate PageRank values of all nodes, then find the top 10.
+ *-------------------------------------------------------------------------------
+ * Usage:
+ *     hadoop jar <JAR Path> [-D <Option>=<Value> ...] <Input Path> <Output Path>
+ * Options:
+ *     rank_encoding    Encoding of PR contributions in the shuffle of the
+ *                      PageRank calculation: double (default), float, fixed
+ *     adjacency_format Form of the out-link lists in the intermediate data:
+ *                      plain (default), compressed (about 2 times smaller
+ *                      on R-MAT graphs, see AdjacencyCodec)
+ *     planner          Sample the input and choose the engine, reducer counts
+ *                      and combiner automatically: off (default), on
+ *     map_threads      Threads per map task of the PageRank calculation, run
+ *                      with MultithreadedMapper: 1 (default)
+ *     map_batch_size   Target nodes whose contributions PageRankMapper adds up
+ *                      before writing: 0 (default, no batching)
+ *     prune            Strip dead ends before iterating and back-fill them
+ *                      afterwards: off (default), on
+ *     prune_max_rounds Most pruning rounds, each strips one more level of the
+ *                      chains leading to dead ends: 10 (default)
+ *     prune_min_fraction
+ *                      Stop pruning after a round that kills less than this
+ *                      fraction of the graph's nodes: 0.01 (default)
+ *-------------------------------------------------------------------------------
+ * MapReduce Jobs:
+ *     1) Initialization
+ *        Mapper: InitMapper
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: InitReducer
+ *     2) Dead-end pruning (iterated, with prune on)
+ *        Mapper: PruneMapper
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Reducer: PruneReducer
+ *     3) PageRank calculation (iterated)
+ *        Mapper: PageRankMapper
+ *        MapRunner: MultithreadedMapper (when map_threads > 1)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Combiner: PageRankCombiner (when chosen by PreflightPlanner)
+ *        Reducer: PageRankReducer
+ *        MapOutputKey: RankKey
+ *        MapOutputValue: RankWritable
+ *     4) Results check (iterated)
+ *        Mapper: CheckMapper
+ *        Reducer: CheckReducer
+ *        ReducerNum: 1
+ *     5) Back-fill of pruned nodes (iterated, with prune on)
+ *        Mapper: (IdentityMapper by default)
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: FillReducer
+ *     6) Output all PageRank
+ *        Mapper: OutputMapper
+ *        Reducer: (IdentityReducer by default)
+ *     7) Output top 10 PageRank
+ *        Mapper: OutputTop10Mapper
+ *        Reducer: OutputTop10Reducer
+ *        ReducerNum: 1
+ *-------------------------------------------------------------------------------
+ * PageRankBenchmark (this file):
+ *     End-to-end scalability benchmark of the whole PageRank pipeline. It
+ * generates an R-MAT graph with RMatGenerator, runs PageRank.main on it, and
+ * reports the wall time and shuffle bytes of every phase, the iteration count,
+ * and the accuracy of the result against an in-memory reference solver
+ * (power iteration with damping 0.9 and dangling mass spread evenly, run to an
+ * L1 change below 1e-10).
+ *     Usage:
+ *              hadoop jar <JAR Path> PageRankBenchmark [-D <Option>=<Value> ...]
+ *                      <Work Path> <Scale> <EdgeFactor>
+ *     The generic options are passed on to PageRank, so the same run can be made
+ * under the LocalJobRunner (-D mapreduce.framework.name=local -D fs.defaultFS=
+ * file:///) or against a cluster. For example, edge factor 16 at scale 16, 19
+ * and 23 gives about 1M, 10M and 100M edges. Set benchmark.reference=false to
+ * skip the reference solver on graphs that do not fit in the driver's heap.
+ *================================================================================
+ */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.fs.*;
+import org.apache.hadoop.conf.*;
+import org.apache.hadoop.io.*;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.LineReader;
+
+public class PageRankBenchmark {
+    
+    /* reference PageRank of the nodes that have an edge, summing to the node count */
+    protected static double[] reference(int n, int[] src, int[] dst, boolean[] present) {
+        int[] outDegree = new int[n];
+        int count = 0;
+        for (int e = 0; e < src.length; e++) {
+            outDegree[src[e]]++;
+        }
+        for (int i = 0; i < n; i++) {
+            if (present[i]) count++;
+        }
+        double[] pr = new double[n];
+        double[] next = new double[n];
+        for (int i = 0; i < n; i++) {
+            if (present[i]) pr[i] = 1.0;
+        }
+        for (int it = 0; it < 1000; it++) {
+            double dangling = 0;
+            for (int i = 0; i < n; i++) {
+                if (present[i] && outDegree[i] == 0) dangling += pr[i];
+            }
+            double base = 0.1 + 0.9 * dangling / count;
+            for (int i = 0; i < n; i++) {
+                next[i] = present[i] ? base : 0;
+            }
+            for (int e = 0; e < src.length; e++) {
+                next[dst[e]] += 0.9 * pr[src[e]] / outDegree[src[e]];
+            }
+            double diff = 0;
+            for (int i = 0; i < n; i++) {
+                diff += Math.abs(next[i] - pr[i]);
+            }
+            double[] t = pr;
+            pr = next;
+            next = t;
+            if (diff / count < 1e-10) break;
+        }
+        return pr;
+    }
+    
+    /* read <NodeA>\t<PR> lines of the all output, NaN for missing nodes */
+    protected static double[] readResult(FileSystem fs, Path dir, int n) throws IOException {
+        double[] pr = new double[n];
+        Arrays.fill(pr, Double.NaN);
+        Text text = new Text();
+        for (FileStatus st : fs.listStatus(dir)) {
+            if (!st.getPath().getName().startsWith("part-")) continue;
+            FSDataInputStream is = fs.open(st.getPath());
+            LineReader in = new LineReader(is);
+            while (in.readLine(text) > 0) {
+                String[] strs = text.toString().split("\\s");
+                pr[Integer.parseInt(strs[0])] = Double.parseDouble(strs[1]);
+            }
+            in.close();
+            is.close();
+        }
+        return pr;
+    }
+    
+    /* indexes of the k largest values */
+    protected static int[] top(double[] pr, int k) {
+        int[] best = new int[k];
+        Arrays.fill(best, -1);
+        for (int i = 0; i < pr.length; i++) {
+            if (Double.isNaN(pr[i])) continue;
+            int j = k;
+            while (j > 0 && (best[j - 1] < 0 || pr[best[j - 1]] < pr[i])) j--;
+            if (j == k) continue;
+            System.arraycopy(best, j, best, j + 1, k - j - 1);
+            best[j] = i;
+        }
+        return best;
+    }
+    
+    /* print the accuracy of result against ref, both normalized to sum 1 */
+    protected static void accuracy(double[] result, double[] ref, boolean[] present) {
+        double sumResult = 0;
+        double sumRef = 0;
+        int missing = 0;
+        for (int i = 0; i < ref.length; i++) {
+            if (!present[i]) continue;
+            if (Double.isNaN(result[i])) {
+                missing++;
+                continue;
+            }
+            sumResult += result[i];
+            sumRef += ref[i];
+        }
+        double l1 = 0;
+        double maxRel = 0;
+        for (int i = 0; i < ref.length; i++) {
+            if (!present[i] || Double.isNaN(result[i])) continue;
+            double a = result[i] / sumResult;
+            double b = ref[i] / sumRef;
+            l1 += Math.abs(a - b);
+            maxRel = Math.max(maxRel, Math.abs(a - b) / b);
+        }
+        int[] topResult = top(result, 10);
+        int[] topRef = top(ref, 10);
+        int overlap = 0;
+        for (int a : topResult) {
+            for (int b : topRef) {
+                if (a >= 0 && a == b) overlap++;
+            }
+        }
+        System.out.println("Accuracy: L1=" + l1 + " MaxRelError=" + maxRel
+                + " Top10Overlap=" + overlap + "/10 MissingNodes=" + missing);
+    }
+    
+    /* program entry */
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] rest = new GenericOptionsParser(conf, args).getRemainingArgs();
+        String workPath = rest[0];
+        int scale = Integer.parseInt(rest[1]);
+        int edgeFactor = Integer.parseInt(rest[2]);
+        FileSystem fs = FileSystem.get(conf);
+        Path input = new Path(workPath + "/input/");
+        Path output = new Path(workPath + "/output/");
+        fs.delete(input, true);
+        fs.delete(output, true);
+        
+        long start = System.currentTimeMillis();
+        RMatGenerator g = RMatGenerator.create(conf, scale, edgeFactor);
+        g.write(fs, new Path(input, "part-00000"));
+        System.out.println("Generated " + g.getSources().length + " edges over 2^" + scale
+                + " ids in " + (System.currentTimeMillis() - start) + " ms");
+        
+        // pass the generic options on to the pipeline
+        List<String> prArgs = new ArrayList<String>();
+        for (int i = 0; i < args.length - rest.length; i++) {
+            prArgs.add(args[i]);
+        }
+        prArgs.add(input.toString());
+        prArgs.add(output.toString());
+        start = System.currentTimeMillis();
+        PageRank.main(prArgs.toArray(new String[prArgs.size()]));
+        long total = System.currentTimeMillis() - start;
+        
+        System.out.println("Phase\tWallTime(ms)\tShuffleBytes");
+        List<String> names = PageRank.getPhaseNames();
+        List<long[]> stats = PageRank.getPhaseStats();
+        long shuffle = 0;
+        for (int i = 0; i < names.size(); i++) {
+            System.out.println(names.get(i) + "\t" + stats.get(i)[0] + "\t" + stats.get(i)[1]);
+            shuffle += stats.get(i)[1];
+        }
+        System.out.println("Total\t" + total + "\t" + shuffle);
+        System.out.println("Iterations: " + PageRank.getIterationNum());
+        
+        if (conf.getBoolean("benchmark.reference", true)) {
+            int n = g.getNodeNum();
+            boolean[] present = new boolean[n];
+            for (int e = 0; e < g.getSources().length; e++) {
+                present[g.getSources()[e]] = true;
+                present[g.getTargets()[e]] = true;
+            }
+            double[] ref = reference(n, g.getSources(), g.getTargets(), present);
+            accuracy(readResult(fs, new Path(output, "all"), n), ref, present);
+        }
+    }
+}
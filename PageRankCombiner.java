@@ -0,0 +1,116 @@
+/*================================================================================
+ * Name: PageRank Calculator
+ * Author: Yiwei CHEN
+ * Job Type: Hadoop Custom JAR
+ * Description:
+ *     Calculate PageRank values of all nodes, then find the top 10.
+ *-------------------------------------------------------------------------------
+ * Usage:
+ *     hadoop jar <JAR Path> [-D <Option>=<Value> ...] <Input Path> <Output Path>
+ * Options:
+ *     rank_encoding    Encoding of PR contributions in the shuffle of the
+ *                      PageRank calculation: double (default), float, fixed
+ *     adjacency_format Form of the out-link lists in the intermediate data:
+ *                      plain (default), compressed (about 2 times smaller
+ *                      on R-MAT graphs, see AdjacencyCodec)
+ *     planner          Sample the input and choose the engine, reducer counts
+ *                      and combiner automatically: off (default), on
+ *     map_threads      Threads per map task of the PageRank calculation, run
+ *                      with MultithreadedMapper: 1 (default)
+ *     map_batch_size   Target nodes whose contributions PageRankMapper adds up
+ *                      before writing: 0 (default, no batching)
+ *     prune            Strip dead ends before iterating and back-fill them
+ *                      afterwards: off (default), on
+ *     prune_max_rounds Most pruning rounds, each strips one more level of the
+ *                      chains leading to dead ends: 10 (default)
+ *     prune_min_fraction
+ *                      Stop pruning after a round that kills less than this
+ *                      fraction of the graph's nodes: 0.01 (default)
+ *-------------------------------------------------------------------------------
+ * MapReduce Jobs:
+ *     1) Initialization
+ *        Mapper: InitMapper
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: InitReducer
+ *     2) Dead-end pruning (iterated, with prune on)
+ *        Mapper: PruneMapper
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Reducer: PruneReducer
+ *     3) PageRank calculation (iterated)
+ *        Mapper: PageRankMapper
+ *        MapRunner: MultithreadedMapper (when map_threads > 1)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Combiner: PageRankCombiner (when chosen by PreflightPlanner)
+ *        Reducer: PageRankReducer
+ *        MapOutputKey: RankKey
+ *        MapOutputValue: RankWritable
+ *     4) Results check (iterated)
+ *        Mapper: CheckMapper
+ *        Reducer: CheckReducer
+ *        ReducerNum: 1
+ *     5) Back-fill of pruned nodes (iterated, with prune on)
+ *        Mapper: (IdentityMapper by default)
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: FillReducer
+ *     6) Output all PageRank
+ *        Mapper: OutputMapper
+ *        Reducer: (IdentityReducer by default)
+ *     7) Output top 10 PageRank
+ *        Mapper: OutputTop10Mapper
+ *        Reducer: OutputTop10Reducer
+ *        ReducerNum: 1
+ *-------------------------------------------------------------------------------
+ * PageRankCombiner (this file):
+ *     Input:   Key: (RankKey) <NodeA> STRUCTURE
+ *              Value: (RankWritable) STRUCTURE <CurrPR> <NodeB1>|<NodeB2>|...
+ *              Key: (RankKey) <NodeA> CONTRIBUTION
+ *              Value: (RankWritable) <Encoding> <PR_received>
+ *              ...
+ *     Output:  Key: (RankKey) <NodeA> STRUCTURE
+ *              Value: (RankWritable) STRUCTURE <CurrPR> <NodeB1>|<NodeB2>|...
+ *              Key: (RankKey) <NodeA> CONTRIBUTION
+ *              Value: (RankWritable) <Encoding> <Sum of PR_received>
+ *     Optional combiner of the PageRank calculation job, enabled by the
+ * PreflightPlanner when the in-degree is skewed. The structure record is passed
+ * through, and all contributions of a map task to the same node are added up
+ * with compensated summation into one record. Depending on the Hadoop version
+ * a combine call gets one node or one (node, tag) pair, both work.
+ *================================================================================
+ */
+import java.io.IOException;
+
+import org.apache.hadoop.io.*;
+import org.apache.hadoop.mapreduce.*;
+
+public class PageRankCombiner extends Reducer<RankKey, RankWritable, RankKey, RankWritable> {
+    private byte encoding = RankWritable.DOUBLE;
+    private RankKey outKey = new RankKey();
+    private RankWritable outValue = new RankWritable();
+    private double[] acc = new double[2];
+    
+    protected void setup(Context context) {
+        encoding = RankWritable.parseEncoding(context.getConfiguration().get("rank_encoding"));
+    }
+    
+    public void reduce(RankKey key, Iterable<RankWritable> values, Context context)
+            throws IOException, InterruptedException {
+        acc[0] = 0.0;
+        acc[1] = 0.0;
+        int count = 0;
+        for (RankWritable val : values) {
+            if (val.isStructure()) {
+                context.write(key, val);
+            } else {
+                RankWritable.neumaierAdd(acc, val.get());
+                count++;
+            }
+        }
+        if (count > 0) {
+            outKey.set(key.getNode(), RankKey.CONTRIBUTION);
+            outValue.setContribution(acc[0] + acc[1], encoding);
+            context.write(outKey, outValue);
+        }
+    }
+}
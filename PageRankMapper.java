@@ -6,25 +6,58 @@
  *     Calculate PageRank values of all nodes, then find the top 10.
  *-------------------------------------------------------------------------------
  * Usage:
- *     hadoop jar <JAR Path> <Input Path> <Output Path>
+ *     hadoop jar <JAR Path> [-D <Option>=<Value> ...] <Input Path> <Output Path>
+ * Options:
+ *     rank_encoding    Encoding of PR contributions in the shuffle of the
+ *                      PageRank calculation: double (default), float, fixed
+ *     adjacency_format Form of the out-link lists in the intermediate data:
+ *                      plain (default), compressed (about 2 times smaller
+ *                      on R-MAT graphs, see AdjacencyCodec)
+ *     planner          Sample the input and choose the engine, reducer counts
+ *                      and combiner automatically: off (default), on
+ *     map_threads      Threads per map task of the PageRank calculation, run
+ *                      with MultithreadedMapper: 1 (default)
+ *     map_batch_size   Target nodes whose contributions PageRankMapper adds up
+ *                      before writing: 0 (default, no batching)
+ *     prune            Strip dead ends before iterating and back-fill them
+ *                      afterwards: off (default), on
+ *     prune_max_rounds Most pruning rounds, each strips one more level of the
+ *                      chains leading to dead ends: 10 (default)
+ *     prune_min_fraction
+ *                      Stop pruning after a round that kills less than this
+ *                      fraction of the graph's nodes: 0.01 (default)
  *-------------------------------------------------------------------------------
  * MapReduce Jobs:
  *     1) Initialization
  *        Mapper: InitMapper
  *        Partitioner: KeyFieldBasedPartitioner
  *        Reducer: InitReducer
- *     2) PageRank calculation (iterated)
+ *     2) Dead-end pruning (iterated, with prune on)
+ *        Mapper: PruneMapper
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Reducer: PruneReducer
+ *     3) PageRank calculation (iterated)
  *        Mapper: PageRankMapper (this file)
- *        Partitioner: KeyFieldBasedPartitioner
+ *        MapRunner: MultithreadedMapper (when map_threads > 1)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Combiner: PageRankCombiner (when chosen by PreflightPlanner)
  *        Reducer: PageRankReducer
- *     3) Results check (iterated)
+ *        MapOutputKey: RankKey
+ *        MapOutputValue: RankWritable
+ *     4) Results check (iterated)
  *        Mapper: CheckMapper
  *        Reducer: CheckReducer
  *        ReducerNum: 1
- *     4) Output all PageRank
+ *     5) Back-fill of pruned nodes (iterated, with prune on)
+ *        Mapper: (IdentityMapper by default)
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: FillReducer
+ *     6) Output all PageRank
  *        Mapper: OutputMapper
  *        Reducer: (IdentityReducer by default)
- *     5) Output top 10 PageRank
+ *     7) Output top 10 PageRank
  *        Mapper: OutputTop10Mapper
  *        Reducer: OutputTop10Reducer
  *        ReducerNum: 1
@@ -32,39 +65,161 @@
  * PageRankMapper (this file):
  *     Input:   Key: (Long) <Line Offset>
  *              Value: (Text) <NodeA> <CurrPR>|<LastPR>$<NodeB1>|<NodeB2>|...
- *     Output:  Key: (Text) <NodeA>
- *              Value: (Text) 0$<CurrPR>$<NodeB1>|<NodeB2>|...
- *              Key: (Text) <NodeB1>
- *              Value: (Text) 1$<PR_received>
- *              Key: (Text) <NodeB2>
- *              Value: (Text) 1$<PR_received>
+ *     Output:  Key: (RankKey) <NodeA> STRUCTURE
+ *              Value: (RankWritable) STRUCTURE <CurrPR> <NodeB1>|<NodeB2>|...
+ *              Key: (RankKey) <NodeB1> CONTRIBUTION
+ *              Value: (RankWritable) <Encoding> <PR_received>
+ *              Key: (RankKey) <NodeB2> CONTRIBUTION
+ *              Value: (RankWritable) <Encoding> <PR_received>
  *              ...
+ *     The <Encoding> of contributions is chosen by the rank_encoding option:
+ * double (default), float or fixed. A compressed out-link list (see
+ * AdjacencyCodec) is decoded to send the contributions, and passed on to the
+ * structure record as it is. A list starting with @<FullDegree>@ (a core node
+ * after dead-end pruning) divides the PR by that degree instead of the length
+ * of the list, so the share sent to cut links is left out.
+ *     The line is parsed in place and the output key and value objects are
+ * reused. Compressed lists are decoded into buffers of the instance's
+ * AdjacencyCodec, and PRs of up to 15 significant digits are read without a
+ * String (RankWritable.parseRank), so the mapper allocates nothing per record
+ * on either list form; longer PRs fall back to Double.parseDouble. All state
+ * belongs to the instance, which makes the class safe to run under
+ * MultithreadedMapper (see the map_threads option). With map_batch_size > 0 the
+ * contributions are added up per target node inside the mapper and written in
+ * batches of at most that many nodes.
  *================================================================================
  */
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.hadoop.io.*;
 import org.apache.hadoop.mapreduce.*;
 
-public class PageRankMapper extends Mapper<LongWritable, Text, Text, Text>{
+public class PageRankMapper extends Mapper<LongWritable, Text, RankKey, RankWritable>{
+    private byte encoding = RankWritable.DOUBLE;
+    private RankKey outKey = new RankKey();
+    private RankWritable outValue = new RankWritable();
+    private byte[] digits = new byte[20];
+    private AdjacencyCodec codec = new AdjacencyCodec();
+    
+    /* contributions not written yet: target node -> {sum, compensation} */
+    private HashMap<Text, double[]> batch = null;
+    private int batchSize = 0;
+    
+    protected void setup(Context context) {
+        encoding = RankWritable.parseEncoding(context.getConfiguration().get("rank_encoding"));
+        batchSize = context.getConfiguration().getInt("map_batch_size", 0);
+        if (batchSize > 0) batch = new HashMap<Text, double[]>();
+    }
+    
     public void map(LongWritable key, Text value, Context context)
             throws IOException, InterruptedException {
-        String line = value.toString();
-        String fromId = line.split("\\s")[0];
-        String argstr = line.split("\\s")[1];
-        String[] args = argstr.split("\\$");
-        double total = Double.parseDouble(args[0].split("\\|")[0]);
-        String toIdstr = "";
-        String[] toIds = {};
-        if (args.length >= 2) {
-            toIdstr = args[1];
-            toIds = toIdstr.split("\\|");
+        byte[] bytes = value.getBytes();
+        int len = value.getLength();
+        int space = 0;
+        while (space < len && bytes[space] != ' ' && bytes[space] != '\t') space++;
+        int dollar = space + 1;
+        while (dollar < len && bytes[dollar] != '$') dollar++;
+        int bar = space + 1;
+        while (bar < dollar && bar < len && bytes[bar] != '|') bar++;
+        double total = RankWritable.parseRank(bytes, space + 1, bar - space - 1);
+        int listStart = Math.min(dollar + 1, len);
+        
+        outKey.set(bytes, 0, space, RankKey.STRUCTURE);
+        outValue.setStructure(bytes, space + 1, bar - space - 1, listStart, len - listStart);
+        context.write(outKey, outValue);
+        
+        // a pruned node keeps its full out-degree in front of the list
+        int degree = -1;
+        if (listStart < len && bytes[listStart] == '@') {
+            int at = listStart + 1;
+            while (bytes[at] != '@') at++;
+            degree = (int) parseLong(bytes, listStart + 1, at - listStart - 1);
+            listStart = at + 1;
         }
-        context.write(new Text(fromId), new Text("0$" + args[0].split("\\|")[0] + "$" + toIdstr));
-        double each = (total * 0.9) / toIds.length;
         
-        for (String toId : toIds) {
-            context.write(new Text(toId), new Text("1$" + String.valueOf(each)));
+        if (listStart < len && bytes[listStart] == AdjacencyCodec.PREFIX.charAt(0)) {
+            int count = codec.decode(parseLong(bytes, 0, space), bytes, listStart, len - listStart);
+            long[] ids = codec.getIds();
+            double each = (total * 0.9) / (degree < 0 ? count : degree);
+            for (int i = 0; i < count; i++) {
+                setKey(ids[i]);
+                emit(each, context);
+            }
+        } else if (listStart < len) {
+            if (degree < 0) {
+                degree = 1;
+                for (int i = listStart; i < len; i++) {
+                    if (bytes[i] == '|') degree++;
+                }
+            }
+            double each = (total * 0.9) / degree;
+            int start = listStart;
+            for (int i = listStart; i <= len; i++) {
+                if (i == len || bytes[i] == '|') {
+                    outKey.set(bytes, start, i - start, RankKey.CONTRIBUTION);
+                    emit(each, context);
+                    start = i + 1;
+                }
+            }
+        }
+    }
+    
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        flush(context);
+    }
+    
+    /* write one contribution to outKey, or add it to the batch */
+    private void emit(double each, Context context) throws IOException, InterruptedException {
+        if (batch == null) {
+            outValue.setContribution(each, encoding);
+            context.write(outKey, outValue);
+            return;
+        }
+        double[] acc = batch.get(outKey.getNode());
+        if (acc == null) {
+            acc = new double[2];
+            batch.put(new Text(outKey.getNode()), acc);
+        }
+        RankWritable.neumaierAdd(acc, each);
+        if (batch.size() >= batchSize) flush(context);
+    }
+    
+    private void flush(Context context) throws IOException, InterruptedException {
+        if (batch == null) return;
+        for (Map.Entry<Text, double[]> e : batch.entrySet()) {
+            outKey.set(e.getKey(), RankKey.CONTRIBUTION);
+            outValue.setContribution(e.getValue()[0] + e.getValue()[1], encoding);
+            context.write(outKey, outValue);
         }
+        batch.clear();
+    }
+    
+    /* parse a decimal long without creating a String */
+    private static long parseLong(byte[] bytes, int start, int len) {
+        boolean negative = len > 0 && bytes[start] == '-';
+        int i = negative ? start + 1 : start;
+        if (i == start + len) throw new NumberFormatException("Empty number");
+        long v = 0;
+        for (; i < start + len; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                throw new NumberFormatException("Bad number: " + new String(bytes, start, len));
+            }
+            v = v * 10 + (bytes[i] - '0');
+        }
+        return negative ? -v : v;
+    }
+    
+    /* set outKey to the decimal form of id without creating a String */
+    private void setKey(long id) {
+        int pos = digits.length;
+        long v = Math.abs(id);
+        do {
+            digits[--pos] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v > 0);
+        if (id < 0) digits[--pos] = '-';
+        outKey.set(digits, pos, digits.length - pos, RankKey.CONTRIBUTION);
     }
-}
\ No newline at end of file
+}
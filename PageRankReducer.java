@@ -6,39 +6,78 @@
  *     Calculate PageRank values of all nodes, then find the top 10.
  *-------------------------------------------------------------------------------
  * Usage:
- *     hadoop jar <JAR Path> <Input Path> <Output Path>
+ *     hadoop jar <JAR Path> [-D <Option>=<Value> ...] <Input Path> <Output Path>
+ * Options:
+ *     rank_encoding    Encoding of PR contributions in the shuffle of the
+ *                      PageRank calculation: double (default), float, fixed
+ *     adjacency_format Form of the out-link lists in the intermediate data:
+ *                      plain (default), compressed (about 2 times smaller
+ *                      on R-MAT graphs, see AdjacencyCodec)
+ *     planner          Sample the input and choose the engine, reducer counts
+ *                      and combiner automatically: off (default), on
+ *     map_threads      Threads per map task of the PageRank calculation, run
+ *                      with MultithreadedMapper: 1 (default)
+ *     map_batch_size   Target nodes whose contributions PageRankMapper adds up
+ *                      before writing: 0 (default, no batching)
+ *     prune            Strip dead ends before iterating and back-fill them
+ *                      afterwards: off (default), on
+ *     prune_max_rounds Most pruning rounds, each strips one more level of the
+ *                      chains leading to dead ends: 10 (default)
+ *     prune_min_fraction
+ *                      Stop pruning after a round that kills less than this
+ *                      fraction of the graph's nodes: 0.01 (default)
  *-------------------------------------------------------------------------------
  * MapReduce Jobs:
  *     1) Initialization
  *        Mapper: InitMapper
  *        Partitioner: KeyFieldBasedPartitioner
  *        Reducer: InitReducer
- *     2) PageRank calculation (iterated)
+ *     2) Dead-end pruning (iterated, with prune on)
+ *        Mapper: PruneMapper
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Reducer: PruneReducer
+ *     3) PageRank calculation (iterated)
  *        Mapper: PageRankMapper
- *        Partitioner: KeyFieldBasedPartitioner
+ *        MapRunner: MultithreadedMapper (when map_threads > 1)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Combiner: PageRankCombiner (when chosen by PreflightPlanner)
  *        Reducer: PageRankReducer (this file)
- *     3) Results check (iterated)
+ *        MapOutputKey: RankKey
+ *        MapOutputValue: RankWritable
+ *     4) Results check (iterated)
  *        Mapper: CheckMapper
  *        Reducer: CheckReducer
  *        ReducerNum: 1
- *     4) Output all PageRank
+ *     5) Back-fill of pruned nodes (iterated, with prune on)
+ *        Mapper: (IdentityMapper by default)
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: FillReducer
+ *     6) Output all PageRank
  *        Mapper: OutputMapper
  *        Reducer: (IdentityReducer by default)
- *     5) Output top 10 PageRank
+ *     7) Output top 10 PageRank
  *        Mapper: OutputTop10Mapper
  *        Reducer: OutputTop10Reducer
  *        ReducerNum: 1
  *-------------------------------------------------------------------------------
  * PageRankReducer (this file):
- *     Input:   Key: (Text) <NodeA>
- *              Value: (Text) 0$<CurrPR>$<NodeB1>|<NodeB2>|...
- *              Key: (Text) <NodeA>
- *              Value: (Text) 1$<PR_received>
- *              Key: (Text) <NodeA>
- *              Value: (Text) 1$<PR_received>
+ *     Input:   Key: (RankKey) <NodeA>
+ *              Value: (RankWritable) STRUCTURE <CurrPR> <NodeB1>|<NodeB2>|...
+ *              Value: (RankWritable) <Encoding> <PR_received>
+ *              Value: (RankWritable) <Encoding> <PR_received>
  *              ...
  *     Output:  Key: (Text) <NodeA>
  *              Value: (Text) <NewPR>|<LastPR>$<NodeB1>|<NodeB2>|...
+ *     The values are grouped by node and sorted by RankKey's tag, so the
+ * structure record (when the node has one) comes first and the rest are
+ * received PRs, streamed without looking at their type. They are added up
+ * with Neumaier's compensated summation, so the rounding error does not grow
+ * with the in-degree of the node. each_leak is read once per task.
+ *     <LastPR> is the PR text of the structure record copied as it is, and the
+ * new PR is written by RankWritable.formatRank into a buffer reused across
+ * calls (15 significant digits, read back exactly by PageRankMapper).
  *================================================================================
  */
 import java.io.IOException;
@@ -46,28 +85,46 @@ import java.io.IOException;
 import org.apache.hadoop.io.*;
 import org.apache.hadoop.mapreduce.*;
 
-public class PageRankReducer extends Reducer<Text, Text, Text, Text> {
+public class PageRankReducer extends Reducer<RankKey, RankWritable, Text, Text> {
+    private static final byte[] NO_PR = "-1000000.0".getBytes();
+    private static final byte[] SEPARATORS = {'|', '$'};
+    
+    private double each_leak = 0.0;
+    private Text toIds = new Text();
+    private Text oldPr = new Text();
+    private byte[] newPr = new byte[32];
+    private Text outKey = new Text();
+    private Text outValue = new Text();
+    private double[] acc = new double[2];
+    
+    protected void setup(Context context) {
+        each_leak = Double.parseDouble(context.getConfiguration().get("each_leak"));
+    }
     
-    public void reduce(Text key, Iterable<Text> values, Context context)
+    public void reduce(RankKey key, Iterable<RankWritable> values, Context context)
             throws IOException, InterruptedException {
-        double pr = 0.1;
-        double each_leak = Double.parseDouble(context.getConfiguration().get("each_leak"));
-        pr += each_leak;
-        double old_pr = -1000000.0;
-        String toIds = "";
-        for (Text val : values) {
-            String s = val.toString();
-            String[] args = s.split("\\$");
-            if (s.startsWith("0")) {
-                if (args.length >= 3) {
-                    toIds = args[2];
-                }
-                old_pr = Double.parseDouble(args[1]);
+        acc[0] = 0.1 + each_leak;
+        acc[1] = 0.0;
+        oldPr.set(NO_PR);
+        toIds.clear();
+        outKey.set(key.getNode());
+        boolean first = true;
+        for (RankWritable val : values) {
+            if (first && val.isStructure()) {
+                toIds.set(val.getToIds());
+                oldPr.set(val.getPr());
             } else {
-                double addpr = Double.parseDouble(args[1]);
-                pr += addpr;
+                RankWritable.neumaierAdd(acc, val.get());
             }
+            first = false;
         }
-        context.write(key, new Text(String.valueOf(pr) + "|" + String.valueOf(old_pr) + "$" + toIds));
+        double pr = acc[0] + acc[1];
+        
+        outValue.set(newPr, 0, RankWritable.formatRank(pr, newPr));
+        outValue.append(SEPARATORS, 0, 1);
+        outValue.append(oldPr.getBytes(), 0, oldPr.getLength());
+        outValue.append(SEPARATORS, 1, 1);
+        outValue.append(toIds.getBytes(), 0, toIds.getLength());
+        context.write(outKey, outValue);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,304 @@
+/*================================================================================
+ * Name: PageRank Calculator
+ * Author: Yiwei CHEN
+ * Job Type: Hadoop Custom JAR
+ * Description:
+ *     Calculate PageRank values of all nodes, then find the top 10.
+ *-------------------------------------------------------------------------------
+ * Usage:
+ *     hadoop jar <JAR Path> [-D <Option>=<Value> ...] <Input Path> <Output Path>
+ * Options:
+ *     rank_encoding    Encoding of PR contributions in the shuffle of the
+ *                      PageRank calculation: double (default), float, fixed
+ *     adjacency_format Form of the out-link lists in the intermediate data:
+ *                      plain (default), compressed (about 2 times smaller
+ *                      on R-MAT graphs, see AdjacencyCodec)
+ *     planner          Sample the input and choose the engine, reducer counts
+ *                      and combiner automatically: off (default), on
+ *     map_threads      Threads per map task of the PageRank calculation, run
+ *                      with MultithreadedMapper: 1 (default)
+ *     map_batch_size   Target nodes whose contributions PageRankMapper adds up
+ *                      before writing: 0 (default, no batching)
+ *     prune            Strip dead ends before iterating and back-fill them
+ *                      afterwards: off (default), on
+ *     prune_max_rounds Most pruning rounds, each strips one more level of the
+ *                      chains leading to dead ends: 10 (default)
+ *     prune_min_fraction
+ *                      Stop pruning after a round that kills less than this
+ *                      fraction of the graph's nodes: 0.01 (default)
+ *-------------------------------------------------------------------------------
+ * MapReduce Jobs:
+ *     1) Initialization
+ *        Mapper: InitMapper
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: InitReducer
+ *     2) Dead-end pruning (iterated, with prune on)
+ *        Mapper: PruneMapper
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Reducer: PruneReducer
+ *     3) PageRank calculation (iterated)
+ *        Mapper: PageRankMapper
+ *        MapRunner: MultithreadedMapper (when map_threads > 1)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Combiner: PageRankCombiner (when chosen by PreflightPlanner)
+ *        Reducer: PageRankReducer
+ *        MapOutputKey: RankKey
+ *        MapOutputValue: RankWritable
+ *     4) Results check (iterated)
+ *        Mapper: CheckMapper
+ *        Reducer: CheckReducer
+ *        ReducerNum: 1
+ *     5) Back-fill of pruned nodes (iterated, with prune on)
+ *        Mapper: (IdentityMapper by default)
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: FillReducer
+ *     6) Output all PageRank
+ *        Mapper: OutputMapper
+ *        Reducer: (IdentityReducer by default)
+ *     7) Output top 10 PageRank
+ *        Mapper: OutputTop10Mapper
+ *        Reducer: OutputTop10Reducer
+ *        ReducerNum: 1
+ *-------------------------------------------------------------------------------
+ * PreflightPlanner (this file):
+ *     Optional preflight stage run by the driver before the first job (see the
+ * planner option). It reads evenly spaced chunks of the input edge list and
+ * estimates the edge count, node count, in/out-degree skew, the memory
+ * footprint of the graph and the shuffle size of one PageRank iteration. From
+ * these it decides:
+ *              engine:   local (LocalJobRunner, in the driver's JVM) for small
+ *                        graphs, otherwise the configured MapReduce framework
+ *              reducers: per job, from the estimated bytes each job shuffles
+ *              combiner: PageRankCombiner on the PageRank calculation job when
+ *                        the in-degree is skewed
+ *     The check and top 10 jobs keep their single reducer. Partitioning stays
+ * by node (RankKey.NodePartitioner for the calculation): a hot node cannot be
+ * split across reducers, so the skew is handled by the combiner instead. The
+ * decision is logged, and options given explicitly with -D are never
+ * overridden.
+ *     The planner.sample_chunks chunks split the input evenly and never
+ * overlap; each reads at most its share of planner.sample_lines, so an input
+ * smaller than the sample is read exactly once. Edges scale by the fraction
+ * of bytes read, nodes by the GEE estimator over the ids seen once. The local
+ * engine is chosen only when the graph fits planner.local_max_bytes (half the
+ * driver's heap by default) and the input planner.local_max_input_bytes
+ * (32 MB), as the local runner runs the map tasks one at a time.
+ *================================================================================
+ */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.*;
+import org.apache.hadoop.conf.*;
+import org.apache.hadoop.io.*;
+import org.apache.hadoop.mapreduce.*;
+import org.apache.hadoop.util.LineReader;
+
+public class PreflightPlanner {
+    private static final Log LOG = LogFactory.getLog(PreflightPlanner.class);
+    
+    public static final String INIT = "init";
+    public static final String CALC = "calc";
+    public static final String OUTPUT = "output";
+    
+    /* estimates */
+    private long inputBytes = 0;
+    private long edgeNum = 0;
+    private long nodeNum = 0;
+    private double inSkew = 0;
+    private double outSkew = 0;
+    private long memoryBytes = 0;
+    private long shuffleBytes = 0;
+    
+    /* options given with -D, left as they are */
+    private boolean explicitEngine = false;
+    private boolean explicitReducers = false;
+    
+    /* decisions */
+    private boolean local = false;
+    private boolean combiner = false;
+    private HashMap<String, Integer> reducers = new HashMap<String, Integer>();
+    
+    /* sample the edge list under input and plan the jobs */
+    public static PreflightPlanner plan(Configuration conf, Path input) throws IOException {
+        PreflightPlanner p = new PreflightPlanner();
+        p.explicitEngine = isExplicit(conf, "mapreduce.framework.name");
+        p.explicitReducers = isExplicit(conf, "mapreduce.job.reduces");
+        p.sample(conf, input);
+        p.decide(conf);
+        p.log();
+        return p;
+    }
+    
+    /* apply the decision to the base configuration of all jobs */
+    public void configure(Configuration conf) {
+        if (local && !explicitEngine) {
+            conf.set("mapreduce.framework.name", "local");
+        }
+    }
+    
+    /* apply the decision to one job of the given phase */
+    public void configure(Job job, String phase) {
+        if (!explicitReducers && reducers.containsKey(phase)) {
+            job.setNumReduceTasks(reducers.get(phase));
+        }
+        if (phase.equals(CALC) && combiner) {
+            job.setCombinerClass(PageRankCombiner.class);
+        }
+    }
+    
+    private void sample(Configuration conf, Path input) throws IOException {
+        FileSystem fs = FileSystem.get(conf);
+        List<FileStatus> files = new ArrayList<FileStatus>();
+        listFiles(fs, input, files);
+        for (FileStatus st : files) {
+            inputBytes += st.getLen();
+        }
+        
+        int chunks = conf.getInt("planner.sample_chunks", 16);
+        int chunkLines = conf.getInt("planner.sample_lines", 100000) / chunks;
+        long readBytes = 0;
+        long sampleEdges = 0;
+        HashMap<String, int[]> degrees = new HashMap<String, int[]>();
+        Text text = new Text();
+        for (int c = 0; c < chunks && inputBytes > 0; c++) {
+            // chunk c covers [start, end] of the files laid end to end, a line
+            // belongs to the chunk it starts in, the next one skips it
+            long start = inputBytes / chunks * c;
+            long end = c == chunks - 1 ? inputBytes : inputBytes / chunks * (c + 1);
+            int lines = 0;
+            long fileStart = 0;
+            for (FileStatus file : files) {
+                long fileEnd = fileStart + file.getLen();
+                if (fileEnd <= start || fileStart >= end || lines >= chunkLines) {
+                    fileStart = fileEnd;
+                    continue;
+                }
+                long pos = Math.max(start, fileStart) - fileStart;
+                long stop = Math.min(end, fileEnd) - fileStart;
+                FSDataInputStream is = fs.open(file.getPath());
+                is.seek(pos);
+                LineReader in = new LineReader(is);
+                // the first line belongs to the chunk before unless it starts the file
+                if (pos > 0) pos += in.readLine(text);
+                while (pos <= stop && lines < chunkLines) {
+                    int len = in.readLine(text);
+                    if (len <= 0) break;
+                    pos += len;
+                    readBytes += len;
+                    lines++;
+                    String line = text.toString();
+                    if (line.startsWith("#")) continue;
+                    String[] strs = line.trim().split("\\s+");
+                    if (strs.length < 2) continue;
+                    sampleEdges++;
+                    degree(degrees, strs[0])[0]++;
+                    degree(degrees, strs[1])[1]++;
+                }
+                in.close();
+                is.close();
+                fileStart = fileEnd;
+            }
+        }
+        if (sampleEdges == 0) return;
+        
+        int sources = 0;
+        int targets = 0;
+        int maxOut = 0;
+        int maxIn = 0;
+        long f1 = 0;
+        for (int[] d : degrees.values()) {
+            if (d[0] > 0) sources++;
+            if (d[1] > 0) targets++;
+            maxOut = Math.max(maxOut, d[0]);
+            maxIn = Math.max(maxIn, d[1]);
+            if (d[0] + d[1] == 1) f1++;
+        }
+        double fraction = Math.min(1.0, (double) readBytes / inputBytes);
+        edgeNum = (long) (sampleEdges / fraction);
+        nodeNum = estimateNodes(degrees.size(), f1, fraction);
+        outSkew = maxOut / ((double) sampleEdges / sources);
+        inSkew = maxIn / ((double) sampleEdges / targets);
+        double bytesPerEdge = (double) readBytes / sampleEdges;
+        
+        int contribution = 9;
+        byte encoding = RankWritable.parseEncoding(conf.get("rank_encoding"));
+        if (encoding != RankWritable.DOUBLE) contribution = 5;
+        double idBytes = bytesPerEdge / 2;
+        // an edge list in arrays, plus each node's id, rank and list header
+        memoryBytes = edgeNum * 16 + nodeNum * 64;
+        // one contribution per edge plus the structure records (about the input)
+        shuffleBytes = (long) (edgeNum * (idBytes + 1 + contribution)) + inputBytes;
+    }
+    
+    private void decide(Configuration conf) {
+        // the local runner shares the driver's heap and runs the tasks one at a time
+        long localMax = conf.getLong("planner.local_max_bytes", Runtime.getRuntime().maxMemory() / 2);
+        long localMaxInput = conf.getLong("planner.local_max_input_bytes", 32L << 20);
+        long perReducer = conf.getLong("planner.bytes_per_reducer", 256L << 20);
+        int maxReducers = conf.getInt("planner.max_reducers", 64);
+        double skew = conf.getFloat("planner.skew_threshold", 10.0f);
+        
+        local = !explicitEngine && memoryBytes <= localMax && inputBytes <= localMaxInput;
+        combiner = inSkew >= skew;
+        reducers.put(INIT, reducerNum(inputBytes * 2, perReducer, maxReducers));
+        reducers.put(CALC, reducerNum(shuffleBytes, perReducer, maxReducers));
+        reducers.put(OUTPUT, reducerNum(nodeNum * 24, perReducer, maxReducers));
+    }
+    
+    private int reducerNum(long bytes, long perReducer, int maxReducers) {
+        if (local) return 1;
+        return (int) Math.max(1, Math.min(maxReducers, (bytes + perReducer - 1) / perReducer));
+    }
+    
+    private void log() {
+        LOG.info("Preflight estimates: input=" + inputBytes + "B edges=" + edgeNum
+                + " nodes~" + nodeNum + " inSkew=" + String.format("%.1f", inSkew)
+                + " outSkew=" + String.format("%.1f", outSkew)
+                + " memory=" + memoryBytes + "B shuffle/iter=" + shuffleBytes + "B");
+        LOG.info("Preflight plan: engine=" + (explicitEngine ? "(given)" : local ? "local" : "mapreduce")
+                + " reducers=" + (explicitReducers ? "(given)" : reducers) + " combiner=" + combiner
+                + " partitioner=by node");
+    }
+    
+    private static boolean isExplicit(Configuration conf, String name) {
+        String[] sources = conf.getPropertySources(name);
+        return sources != null && Arrays.asList(sources).contains("from command line");
+    }
+    
+    /* distinct ids of the whole input by the GEE estimator: ids seen once (f1)
+       in a sample of the given fraction stand for sqrt(1 / fraction) ids each,
+       ids seen more often for themselves */
+    private static long estimateNodes(long distinct, long f1, double fraction) {
+        if (fraction >= 1.0) return distinct;
+        return (long) (Math.sqrt(1 / fraction) * f1) + distinct - f1;
+    }
+    
+    private static int[] degree(HashMap<String, int[]> degrees, String id) {
+        int[] d = degrees.get(id);
+        if (d == null) {
+            d = new int[2];
+            degrees.put(id, d);
+        }
+        return d;
+    }
+    
+    private static void listFiles(FileSystem fs, Path p, List<FileStatus> files) throws IOException {
+        for (FileStatus st : fs.listStatus(p)) {
+            String name = st.getPath().getName();
+            if (name.startsWith("_") || name.startsWith(".")) continue;
+            if (st.isDirectory()) {
+                listFiles(fs, st.getPath(), files);
+            } else {
+                files.add(st);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*================================================================================
+ * Name: PageRank Calculator
+ * Author: Yiwei CHEN
+ * Job Type: Hadoop Custom JAR
+ * Description:
+ *     Calculate PageRank values of all nodes, then find the top 10.
+ *-------------------------------------------------------------------------------
+ * Usage:
+ *     hadoop jar <JAR Path> [-D <Option>=<Value> ...] <Input Path> <Output Path>
+ * Options:
+ *     rank_encoding    Encoding of PR contributions in the shuffle of the
+ *                      PageRank calculation: double (default), float, fixed
+ *     adjacency_format Form of the out-link lists in the intermediate data:
+ *                      plain (default), compressed (about 2 times smaller
+ *                      on R-MAT graphs, see AdjacencyCodec)
+ *     planner          Sample the input and choose the engine, reducer counts
+ *                      and combiner automatically: off (default), on
+ *     map_threads      Threads per map task of the PageRank calculation, run
+ *                      with MultithreadedMapper: 1 (default)
+ *     map_batch_size   Target nodes whose contributions PageRankMapper adds up
+ *                      before writing: 0 (default, no batching)
+ *     prune            Strip dead ends before iterating and back-fill them
+ *                      afterwards: off (default), on
+ *     prune_max_rounds Most pruning rounds, each strips one more level of the
+ *                      chains leading to dead ends: 10 (default)
+ *     prune_min_fraction
+ *                      Stop pruning after a round that kills less than this
+ *                      fraction of the graph's nodes: 0.01 (default)
+ *-------------------------------------------------------------------------------
+ * MapReduce Jobs:
+ *     1) Initialization
+ *        Mapper: InitMapper
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: InitReducer
+ *     2) Dead-end pruning (iterated, with prune on)
+ *        Mapper: PruneMapper (this file)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Reducer: PruneReducer
+ *     3) PageRank calculation (iterated)
+ *        Mapper: PageRankMapper
+ *        MapRunner: MultithreadedMapper (when map_threads > 1)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Combiner: PageRankCombiner (when chosen by PreflightPlanner)
+ *        Reducer: PageRankReducer
+ *        MapOutputKey: RankKey
+ *        MapOutputValue: RankWritable
+ *     4) Results check (iterated)
+ *        Mapper: CheckMapper
+ *        Reducer: CheckReducer
+ *        ReducerNum: 1
+ *     5) Back-fill of pruned nodes (iterated, with prune on)
+ *        Mapper: (IdentityMapper by default)
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: FillReducer
+ *     6) Output all PageRank
+ *        Mapper: OutputMapper
+ *        Reducer: (IdentityReducer by default)
+ *     7) Output top 10 PageRank
+ *        Mapper: OutputTop10Mapper
+ *        Reducer: OutputTop10Reducer
+ *        ReducerNum: 1
+ *-------------------------------------------------------------------------------
+ * PruneMapper (this file):
+ *     Input:   Key: (Long) <Line Offset>
+ *              Value: (Text) <NodeA> <CurrPR>|<LastPR>$[@<FullDegree>@]
+ *                            <NodeB1>|<NodeB2>|...
+ *              Value: (Text) <NodeA> !<NodeB>
+ *     Output:  Key: (RankKey) <NodeA> RECORD
+ *              Value: (Text) <CurrPR>|<LastPR>$[@<FullDegree>@]<NodeB1>|...
+ *              Key: (RankKey) <NodeA> NOTICE
+ *              Value: (Text) <NodeB>
+ *              Key: (RankKey) <NodeB1> LINK
+ *              Value: (Text) <NodeA>
+ *              ...
+ *     One round of dead-end pruning. A live node sends its record to itself and
+ * a reverse link to each of its live out-links. A notice (!) that NodeB died
+ * in the last round is passed to NodeA, which then cuts the link to NodeB. The
+ * tags sort the record first, then the notices, then the reverse links.
+ *================================================================================
+ */
+import java.io.IOException;
+
+import org.apache.hadoop.io.*;
+import org.apache.hadoop.mapreduce.*;
+
+public class PruneMapper extends Mapper<LongWritable, Text, RankKey, Text>{
+    public static final byte RECORD = 0;
+    public static final byte NOTICE = 1;
+    public static final byte LINK = 2;
+    
+    private RankKey outKey = new RankKey();
+    private Text outValue = new Text();
+    
+    public void map(LongWritable key, Text value, Context context)
+            throws IOException, InterruptedException {
+        String line = value.toString();
+        String fromId = line.split("\\s")[0];
+        String argstr = line.split("\\s")[1];
+        outKey.getNode().set(fromId);
+        if (argstr.startsWith("!")) {
+            outKey.setTag(NOTICE);
+            outValue.set(argstr.substring(1));
+            context.write(outKey, outValue);
+            return;
+        }
+        outKey.setTag(RECORD);
+        outValue.set(argstr);
+        context.write(outKey, outValue);
+        int d = argstr.indexOf('$');
+        String list = d >= 0 ? AdjacencyCodec.stripDegree(argstr.substring(d + 1)) : "";
+        outKey.setTag(LINK);
+        outValue.set(fromId);
+        for (String toId : AdjacencyCodec.toIds(fromId, list)) {
+            outKey.getNode().set(toId);
+            context.write(outKey, outValue);
+        }
+    }
+}
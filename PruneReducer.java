@@ -0,0 +1,211 @@
+/*================================================================================
+ * Name: PageRank Calculator
+ * Author: Yiwei CHEN
+ * Job Type: Hadoop Custom JAR
+ * Description:
+ *     Calculate PageRank values of all nodes, then find the top 10.
+ *-------------------------------------------------------------------------------
+ * Usage:
+ *     hadoop jar <JAR Path> [-D <Option>=<Value> ...] <Input Path> <Output Path>
+ * Options:
+ *     rank_encoding    Encoding of PR contributions in the shuffle of the
+ *                      PageRank calculation: double (default), float, fixed
+ *     adjacency_format Form of the out-link lists in the intermediate data:
+ *                      plain (default), compressed (about 2 times smaller
+ *                      on R-MAT graphs, see AdjacencyCodec)
+ *     planner          Sample the input and choose the engine, reducer counts
+ *                      and combiner automatically: off (default), on
+ *     map_threads      Threads per map task of the PageRank calculation, run
+ *                      with MultithreadedMapper: 1 (default)
+ *     map_batch_size   Target nodes whose contributions PageRankMapper adds up
+ *                      before writing: 0 (default, no batching)
+ *     prune            Strip dead ends before iterating and back-fill them
+ *                      afterwards: off (default), on
+ *     prune_max_rounds Most pruning rounds, each strips one more level of the
+ *                      chains leading to dead ends: 10 (default)
+ *     prune_min_fraction
+ *                      Stop pruning after a round that kills less than this
+ *                      fraction of the graph's nodes: 0.01 (default)
+ *-------------------------------------------------------------------------------
+ * MapReduce Jobs:
+ *     1) Initialization
+ *        Mapper: InitMapper
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: InitReducer
+ *     2) Dead-end pruning (iterated, with prune on)
+ *        Mapper: PruneMapper
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Reducer: PruneReducer (this file)
+ *     3) PageRank calculation (iterated)
+ *        Mapper: PageRankMapper
+ *        MapRunner: MultithreadedMapper (when map_threads > 1)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Combiner: PageRankCombiner (when chosen by PreflightPlanner)
+ *        Reducer: PageRankReducer
+ *        MapOutputKey: RankKey
+ *        MapOutputValue: RankWritable
+ *     4) Results check (iterated)
+ *        Mapper: CheckMapper
+ *        Reducer: CheckReducer
+ *        ReducerNum: 1
+ *     5) Back-fill of pruned nodes (iterated, with prune on)
+ *        Mapper: (IdentityMapper by default)
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: FillReducer
+ *     6) Output all PageRank
+ *        Mapper: OutputMapper
+ *        Reducer: (IdentityReducer by default)
+ *     7) Output top 10 PageRank
+ *        Mapper: OutputTop10Mapper
+ *        Reducer: OutputTop10Reducer
+ *        ReducerNum: 1
+ *-------------------------------------------------------------------------------
+ * PruneReducer (this file):
+ *     Input:   Key: (RankKey) <NodeA> RECORD
+ *              Value: (Text) <CurrPR>|<LastPR>$[@<FullDegree>@]<NodeB1>|...
+ *              Key: (RankKey) <NodeA> NOTICE  (NodeB died in the last round)
+ *              Value: (Text) <NodeB>
+ *              Key: (RankKey) <NodeA> LINK    (NodeC links to NodeA)
+ *              Value: (Text) <NodeC>
+ *     Output:  Key: (Text) <NodeA>
+ *              Value: (Text) <CurrPR>|<LastPR>$@<FullDegree>@<NodeB1>|...
+ *     Named outputs:
+ *              cut:    <NodeA> ><NodeB>               (link cut this round)
+ *              dead:   <NodeA> #<Round>$<FullDegree>  (NodeA died this round)
+ *              notice: <NodeC> !<NodeA>               (for the next round)
+ *     The links to nodes that died in the last round are cut, keeping the full
+ * out-degree in front of the list. A node left without live out-links dies in
+ * this round, as does a node that has no record at all in the first round (it
+ * never had out-links), and every node linking to it gets a notice. A node only
+ * dies after all its out-links did, so the dead nodes form a DAG, and each
+ * dead node's links are all in the cut output. With prune_kill false nothing
+ * dies, so the last notices are applied and the live records are the core.
+ * The count of dead nodes goes to the PageRank/PRUNED counter, the count of
+ * nodes still in the graph at the start of the round to PageRank/NODES.
+ *     Grouping is by node only and the tags sort the record, then the notices,
+ * then the reverse links, so the fate of the node is settled when the first
+ * reverse link arrives. The notices of a dying node are then written while the
+ * links stream by, and a live node skips them; only the dead out-links (at
+ * most the node's out-degree) are held, in a set.
+ *================================================================================
+ */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.hadoop.io.*;
+import org.apache.hadoop.mapreduce.*;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+
+public class PruneReducer extends Reducer<RankKey, Text, Text, Text> {
+    private MultipleOutputs<Text, Text> mos;
+    private int round = 1;
+    private boolean kill = true;
+    
+    private Text node = new Text();
+    private Text notice = new Text();
+    private Set<String> deadIds = new HashSet<String>();
+    
+    protected void setup(Context context) {
+        mos = new MultipleOutputs<Text, Text>(context);
+        round = context.getConfiguration().getInt("prune_round", 1);
+        kill = context.getConfiguration().getBoolean("prune_kill", true);
+    }
+    
+    protected void cleanup(Context context) throws IOException, InterruptedException {
+        mos.close();
+    }
+    
+    public void reduce(RankKey key, Iterable<Text> values, Context context)
+            throws IOException, InterruptedException {
+        node.set(key.getNode());
+        String record = null;
+        deadIds.clear();
+        boolean settled = false;
+        boolean dies = false;
+        // the key follows the values, its tag is the tag of the current value
+        for (Text val : values) {
+            byte tag = key.getTag();
+            if (tag == PruneMapper.RECORD) {
+                record = val.toString();
+            } else if (tag == PruneMapper.NOTICE) {
+                deadIds.add(val.toString());
+            } else {
+                if (!settled) {
+                    dies = settle(record, context);
+                    settled = true;
+                }
+                if (!dies) break;
+                mos.write("notice", val, notice);
+            }
+        }
+        if (!settled) settle(record, context);
+    }
+    
+    /* cut the dead out-links and write the record, or let the node die;
+       return whether it died */
+    private boolean settle(String record, Context context)
+            throws IOException, InterruptedException {
+        if (record == null) {
+            // a node with no out-links, or a stale link to a node already dead
+            if (round == 1) {
+                context.getCounter("PageRank", "NODES").increment(1);
+                if (kill) {
+                    die(0, context);
+                    return true;
+                }
+            }
+            return false;
+        }
+        context.getCounter("PageRank", "NODES").increment(1);
+        
+        int d = record.indexOf('$');
+        String prs = d >= 0 ? record.substring(0, d) : record;
+        String list = d >= 0 ? record.substring(d + 1) : "";
+        int degree = AdjacencyCodec.fullDegree(list);
+        list = AdjacencyCodec.stripDegree(list);
+        String[] ids = AdjacencyCodec.toIds(node.toString(), list);
+        if (degree < 0) degree = ids.length;
+        List<String> toIds = new ArrayList<String>(ids.length);
+        for (String id : ids) {
+            if (deadIds.contains(id)) {
+                mos.write("cut", node, new Text(">" + id));
+            } else {
+                toIds.add(id);
+            }
+        }
+        if (toIds.isEmpty() && kill) {
+            die(degree, context);
+            return true;
+        }
+        
+        if (!deadIds.isEmpty()) {
+            if (AdjacencyCodec.isEncoded(list)) {
+                long[] longs = new long[toIds.size()];
+                for (int i = 0; i < longs.length; i++) {
+                    longs[i] = Long.parseLong(toIds.get(i));
+                }
+                list = longs.length == 0 ? "" : AdjacencyCodec.encode(Long.parseLong(node.toString()), longs, longs.length);
+            } else {
+                StringBuilder sb = new StringBuilder();
+                for (String toId : toIds) {
+                    if (sb.length() > 0) sb.append('|');
+                    sb.append(toId);
+                }
+                list = sb.toString();
+            }
+        }
+        context.write(node, new Text(prs + "$@" + degree + "@" + list));
+        return false;
+    }
+    
+    private void die(int degree, Context context) throws IOException, InterruptedException {
+        mos.write("dead", node, new Text("#" + round + "$" + degree));
+        notice.set("!" + node.toString());
+        context.getCounter("PageRank", "PRUNED").increment(1);
+    }
+}
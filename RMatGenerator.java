@@ -0,0 +1,176 @@
+/*================================================================================
+ * Name: PageRank Calculator
+ * Author: Yiwei CHEN
+ * Job Type: Hadoop Custom JAR
+ * Description:
+ *     Calculate PageRank values of all nodes, then find the top 10.
+ *-------------------------------------------------------------------------------
+ * Usage:
+ *     hadoop jar <JAR Path> [-D <Option>=<Value> ...] <Input Path> <Output Path>
+ * Options:
+ *     rank_encoding    Encoding of PR contributions in the shuffle of the
+ *                      PageRank calculation: double (default), float, fixed
+ *     adjacency_format Form of the out-link lists in the intermediate data:
+ *                      plain (default), compressed (about 2 times smaller
+ *                      on R-MAT graphs, see AdjacencyCodec)
+ *     planner          Sample the input and choose the engine, reducer counts
+ *                      and combiner automatically: off (default), on
+ *     map_threads      Threads per map task of the PageRank calculation, run
+ *                      with MultithreadedMapper: 1 (default)
+ *     map_batch_size   Target nodes whose contributions PageRankMapper adds up
+ *                      before writing: 0 (default, no batching)
+ *     prune            Strip dead ends before iterating and back-fill them
+ *                      afterwards: off (default), on
+ *     prune_max_rounds Most pruning rounds, each strips one more level of the
+ *                      chains leading to dead ends: 10 (default)
+ *     prune_min_fraction
+ *                      Stop pruning after a round that kills less than this
+ *                      fraction of the graph's nodes: 0.01 (default)
+ *-------------------------------------------------------------------------------
+ * MapReduce Jobs:
+ *     1) Initialization
+ *        Mapper: InitMapper
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: InitReducer
+ *     2) Dead-end pruning (iterated, with prune on)
+ *        Mapper: PruneMapper
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Reducer: PruneReducer
+ *     3) PageRank calculation (iterated)
+ *        Mapper: PageRankMapper
+ *        MapRunner: MultithreadedMapper (when map_threads > 1)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Combiner: PageRankCombiner (when chosen by PreflightPlanner)
+ *        Reducer: PageRankReducer
+ *        MapOutputKey: RankKey
+ *        MapOutputValue: RankWritable
+ *     4) Results check (iterated)
+ *        Mapper: CheckMapper
+ *        Reducer: CheckReducer
+ *        ReducerNum: 1
+ *     5) Back-fill of pruned nodes (iterated, with prune on)
+ *        Mapper: (IdentityMapper by default)
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: FillReducer
+ *     6) Output all PageRank
+ *        Mapper: OutputMapper
+ *        Reducer: (IdentityReducer by default)
+ *     7) Output top 10 PageRank
+ *        Mapper: OutputTop10Mapper
+ *        Reducer: OutputTop10Reducer
+ *        ReducerNum: 1
+ *-------------------------------------------------------------------------------
+ * RMatGenerator (this file):
+ *     Synthetic R-MAT (recursive matrix) graph generator for benchmarking. Each
+ * edge picks one quadrant of the adjacency matrix per level with probabilities
+ * a, b, c and 1-a-b-c, over <Scale> levels, giving 2^<Scale> node ids and a
+ * skewed power-law degree distribution. Node ids are randomly permuted so that
+ * the generator's locality does not leak into the ids. The edges are written
+ * in the format InitMapper reads:
+ *              <NodeA> <NodeB>
+ *     Usage:
+ *              hadoop jar <JAR Path> RMatGenerator [-D <Option>=<Value> ...]
+ *                      <Output Path> <Scale> <EdgeFactor>
+ *     Options: rmat.a, rmat.b, rmat.c (default 0.57, 0.19, 0.19, as in
+ * Graph500) and rmat.seed.
+ *================================================================================
+ */
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.apache.hadoop.fs.*;
+import org.apache.hadoop.conf.*;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+public class RMatGenerator {
+    private int[] src;
+    private int[] dst;
+    private int nodeNum;
+    
+    /* generate edgeFactor * 2^scale edges over 2^scale nodes */
+    public RMatGenerator(int scale, int edgeFactor, double a, double b, double c, long seed) {
+        nodeNum = 1 << scale;
+        int edgeNum = edgeFactor * nodeNum;
+        src = new int[edgeNum];
+        dst = new int[edgeNum];
+        Random random = new Random(seed);
+        for (int e = 0; e < edgeNum; e++) {
+            int u = 0;
+            int v = 0;
+            for (int bit = scale - 1; bit >= 0; bit--) {
+                double r = random.nextDouble();
+                if (r < a) {
+                    // top left
+                } else if (r < a + b) {
+                    v |= 1 << bit;
+                } else if (r < a + b + c) {
+                    u |= 1 << bit;
+                } else {
+                    u |= 1 << bit;
+                    v |= 1 << bit;
+                }
+            }
+            src[e] = u;
+            dst[e] = v;
+        }
+        
+        // random permutation of the node ids
+        int[] perm = new int[nodeNum];
+        for (int i = 0; i < nodeNum; i++) {
+            perm[i] = i;
+        }
+        for (int i = nodeNum - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = perm[i];
+            perm[i] = perm[j];
+            perm[j] = t;
+        }
+        for (int e = 0; e < edgeNum; e++) {
+            src[e] = perm[src[e]];
+            dst[e] = perm[dst[e]];
+        }
+    }
+    
+    public int getNodeNum() {
+        return nodeNum;
+    }
+    
+    public int[] getSources() {
+        return src;
+    }
+    
+    public int[] getTargets() {
+        return dst;
+    }
+    
+    /* write the edge list as a single file */
+    public void write(FileSystem fs, Path p) throws IOException {
+        OutputStream os = new BufferedOutputStream(fs.create(p, true), 1 << 20);
+        StringBuilder line = new StringBuilder();
+        for (int e = 0; e < src.length; e++) {
+            line.setLength(0);
+            line.append(src[e]).append(' ').append(dst[e]).append('\n');
+            os.write(line.toString().getBytes("UTF-8"));
+        }
+        os.close();
+    }
+    
+    /* build a generator from the rmat.* options */
+    public static RMatGenerator create(Configuration conf, int scale, int edgeFactor) {
+        return new RMatGenerator(scale, edgeFactor,
+                conf.getDouble("rmat.a", 0.57), conf.getDouble("rmat.b", 0.19),
+                conf.getDouble("rmat.c", 0.19), conf.getLong("rmat.seed", 1L));
+    }
+    
+    /* program entry */
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        args = new GenericOptionsParser(conf, args).getRemainingArgs();
+        RMatGenerator g = create(conf, Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+        g.write(FileSystem.get(conf), new Path(args[0] + "/part-00000"));
+    }
+}
@@ -0,0 +1,195 @@
+/*================================================================================
+ * Name: PageRank Calculator
+ * Author: Yiwei CHEN
+ * Job Type: Hadoop Custom JAR
+ * Description:
+ *     Calculate PageRank values of all nodes, then find the top 10.
+ *-------------------------------------------------------------------------------
+ * Usage:
+ *     hadoop jar <JAR Path> [-D <Option>=<Value> ...] <Input Path> <Output Path>
+ * Options:
+ *     rank_encoding    Encoding of PR contributions in the shuffle of the
+ *                      PageRank calculation: double (default), float, fixed
+ *     adjacency_format Form of the out-link lists in the intermediate data:
+ *                      plain (default), compressed (about 2 times smaller
+ *                      on R-MAT graphs, see AdjacencyCodec)
+ *     planner          Sample the input and choose the engine, reducer counts
+ *                      and combiner automatically: off (default), on
+ *     map_threads      Threads per map task of the PageRank calculation, run
+ *                      with MultithreadedMapper: 1 (default)
+ *     map_batch_size   Target nodes whose contributions PageRankMapper adds up
+ *                      before writing: 0 (default, no batching)
+ *     prune            Strip dead ends before iterating and back-fill them
+ *                      afterwards: off (default), on
+ *     prune_max_rounds Most pruning rounds, each strips one more level of the
+ *                      chains leading to dead ends: 10 (default)
+ *     prune_min_fraction
+ *                      Stop pruning after a round that kills less than this
+ *                      fraction of the graph's nodes: 0.01 (default)
+ *-------------------------------------------------------------------------------
+ * MapReduce Jobs:
+ *     1) Initialization
+ *        Mapper: InitMapper
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: InitReducer
+ *     2) Dead-end pruning (iterated, with prune on)
+ *        Mapper: PruneMapper
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Reducer: PruneReducer
+ *     3) PageRank calculation (iterated)
+ *        Mapper: PageRankMapper
+ *        MapRunner: MultithreadedMapper (when map_threads > 1)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Combiner: PageRankCombiner (when chosen by PreflightPlanner)
+ *        Reducer: PageRankReducer
+ *        MapOutputKey: RankKey (this file)
+ *        MapOutputValue: RankWritable
+ *     4) Results check (iterated)
+ *        Mapper: CheckMapper
+ *        Reducer: CheckReducer
+ *        ReducerNum: 1
+ *     5) Back-fill of pruned nodes (iterated, with prune on)
+ *        Mapper: (IdentityMapper by default)
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: FillReducer
+ *     6) Output all PageRank
+ *        Mapper: OutputMapper
+ *        Reducer: (IdentityReducer by default)
+ *     7) Output top 10 PageRank
+ *        Mapper: OutputTop10Mapper
+ *        Reducer: OutputTop10Reducer
+ *        ReducerNum: 1
+ *-------------------------------------------------------------------------------
+ * RankKey (this file):
+ *     The map output key of the PageRank calculation job: <NodeA> and a tag,
+ * STRUCTURE (0) for the node's structure record and CONTRIBUTION (1) for the
+ * PRs it receives. Keys sort by node then tag, but are partitioned
+ * (NodePartitioner) and grouped (GroupComparator) by node only, so the
+ * structure record is always the first value of a reduce call and the
+ * contributions follow as a plain stream of numbers. The dead-end pruning job
+ * uses the same key with tags of its own.
+ *     Wire format: <NodeA:Text> <Tag:byte>, compared in raw bytes.
+ *================================================================================
+ */
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.*;
+
+public class RankKey implements WritableComparable<RankKey> {
+    public static final byte STRUCTURE = 0;
+    public static final byte CONTRIBUTION = 1;
+    
+    private Text node = new Text();
+    private byte tag = STRUCTURE;
+    
+    public RankKey() {
+    }
+    
+    public void set(Text node, byte tag) {
+        this.node.set(node);
+        this.tag = tag;
+    }
+    
+    public void set(byte[] bytes, int start, int len, byte tag) {
+        this.node.set(bytes, start, len);
+        this.tag = tag;
+    }
+    
+    public void setTag(byte tag) {
+        this.tag = tag;
+    }
+    
+    public Text getNode() {
+        return node;
+    }
+    
+    public byte getTag() {
+        return tag;
+    }
+    
+    public void write(DataOutput out) throws IOException {
+        node.write(out);
+        out.writeByte(tag);
+    }
+    
+    public void readFields(DataInput in) throws IOException {
+        node.readFields(in);
+        tag = in.readByte();
+    }
+    
+    public int compareTo(RankKey o) {
+        int c = node.compareTo(o.node);
+        return c != 0 ? c : tag - o.tag;
+    }
+    
+    public boolean equals(Object o) {
+        return o instanceof RankKey && compareTo((RankKey) o) == 0;
+    }
+    
+    public int hashCode() {
+        return node.hashCode() * 31 + tag;
+    }
+    
+    public String toString() {
+        return node.toString();
+    }
+    
+    /* sort by node, then tag */
+    public static class Comparator extends WritableComparator {
+        public Comparator() {
+            super(RankKey.class);
+        }
+        
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            try {
+                int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+                int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+                int len1 = readVInt(b1, s1);
+                int len2 = readVInt(b2, s2);
+                int c = compareBytes(b1, s1 + n1, len1, b2, s2 + n2, len2);
+                if (c != 0) return c;
+                return b1[s1 + n1 + len1] - b2[s2 + n2 + len2];
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+    }
+    
+    /* group by node only */
+    public static class GroupComparator extends WritableComparator {
+        public GroupComparator() {
+            super(RankKey.class);
+        }
+        
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            try {
+                int n1 = WritableUtils.decodeVIntSize(b1[s1]);
+                int n2 = WritableUtils.decodeVIntSize(b2[s2]);
+                return compareBytes(b1, s1 + n1, readVInt(b1, s1), b2, s2 + n2, readVInt(b2, s2));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e);
+            }
+        }
+        
+        /* WritableComparator declares this method with raw types */
+        @SuppressWarnings("rawtypes")
+        public int compare(WritableComparable a, WritableComparable b) {
+            return ((RankKey) a).node.compareTo(((RankKey) b).node);
+        }
+    }
+    
+    /* partition by node only */
+    public static class NodePartitioner extends org.apache.hadoop.mapreduce.Partitioner<RankKey, Writable> {
+        public int getPartition(RankKey key, Writable value, int numPartitions) {
+            return (key.node.hashCode() & Integer.MAX_VALUE) % numPartitions;
+        }
+    }
+    
+    static {
+        WritableComparator.define(RankKey.class, new Comparator());
+    }
+}
@@ -0,0 +1,292 @@
+/*================================================================================
+ * Name: PageRank Calculator
+ * Author: Yiwei CHEN
+ * Job Type: Hadoop Custom JAR
+ * Description:
+ *     Calculate PageRank values of all nodes, then find the top 10.
+ *-------------------------------------------------------------------------------
+ * Usage:
+ *     hadoop jar <JAR Path> [-D <Option>=<Value> ...] <Input Path> <Output Path>
+ * Options:
+ *     rank_encoding    Encoding of PR contributions in the shuffle of the
+ *                      PageRank calculation: double (default), float, fixed
+ *     adjacency_format Form of the out-link lists in the intermediate data:
+ *                      plain (default), compressed (about 2 times smaller
+ *                      on R-MAT graphs, see AdjacencyCodec)
+ *     planner          Sample the input and choose the engine, reducer counts
+ *                      and combiner automatically: off (default), on
+ *     map_threads      Threads per map task of the PageRank calculation, run
+ *                      with MultithreadedMapper: 1 (default)
+ *     map_batch_size   Target nodes whose contributions PageRankMapper adds up
+ *                      before writing: 0 (default, no batching)
+ *     prune            Strip dead ends before iterating and back-fill them
+ *                      afterwards: off (default), on
+ *     prune_max_rounds Most pruning rounds, each strips one more level of the
+ *                      chains leading to dead ends: 10 (default)
+ *     prune_min_fraction
+ *                      Stop pruning after a round that kills less than this
+ *                      fraction of the graph's nodes: 0.01 (default)
+ *-------------------------------------------------------------------------------
+ * MapReduce Jobs:
+ *     1) Initialization
+ *        Mapper: InitMapper
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: InitReducer
+ *     2) Dead-end pruning (iterated, with prune on)
+ *        Mapper: PruneMapper
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Reducer: PruneReducer
+ *     3) PageRank calculation (iterated)
+ *        Mapper: PageRankMapper
+ *        MapRunner: MultithreadedMapper (when map_threads > 1)
+ *        Partitioner: RankKey.NodePartitioner
+ *        GroupingComparator: RankKey.GroupComparator
+ *        Combiner: PageRankCombiner (when chosen by PreflightPlanner)
+ *        Reducer: PageRankReducer
+ *        MapOutputKey: RankKey
+ *        MapOutputValue: RankWritable (this file)
+ *     4) Results check (iterated)
+ *        Mapper: CheckMapper
+ *        Reducer: CheckReducer
+ *        ReducerNum: 1
+ *     5) Back-fill of pruned nodes (iterated, with prune on)
+ *        Mapper: (IdentityMapper by default)
+ *        Partitioner: KeyFieldBasedPartitioner
+ *        Reducer: FillReducer
+ *     6) Output all PageRank
+ *        Mapper: OutputMapper
+ *        Reducer: (IdentityReducer by default)
+ *     7) Output top 10 PageRank
+ *        Mapper: OutputTop10Mapper
+ *        Reducer: OutputTop10Reducer
+ *        ReducerNum: 1
+ *-------------------------------------------------------------------------------
+ * RankWritable (this file):
+ *     The map output value of the PageRank calculation job. It carries either a
+ * node's structure record (its current PR and out-link list) or one PR
+ * contribution sent to a node. Contributions can be encoded as a full double,
+ * a 4-byte float, or a fixed-point int (see the rank_encoding option), which
+ * keeps the shuffle much smaller than the decimal text form. The structure
+ * record keeps the PR text of the input line, so PageRankReducer copies it to
+ * <LastPR> as it is; formatRank and parseRank write and read the PRs of the
+ * intermediate data without Strings.
+ *     Wire format: <Type:byte> then
+ *              STRUCTURE: <CurrPR:Text> <NodeB1>|<NodeB2>|...:Text
+ *              DOUBLE:    <PR_received:double>
+ *              FLOAT:     <PR_received:float>
+ *              FIXED:     <PR_received * 2^FIXED_SHIFT:vint>
+ *================================================================================
+ */
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.*;
+
+public class RankWritable implements Writable {
+    public static final byte STRUCTURE = 0;
+    public static final byte DOUBLE = 1;
+    public static final byte FLOAT = 2;
+    public static final byte FIXED = 3;
+    
+    /* fixed-point contributions keep 24 fraction bits, values up to 2^7 */
+    public static final int FIXED_SHIFT = 24;
+    protected static final double FIXED_SCALE = (double) (1 << FIXED_SHIFT);
+    
+    /* powers of ten that are exact doubles */
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1.0;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+    
+    private byte type = DOUBLE;
+    private double value = 0.0;
+    private Text pr = new Text();
+    private Text toIds = new Text();
+    
+    public RankWritable() {
+    }
+    
+    /* map the rank_encoding option to a record type, double by default */
+    public static byte parseEncoding(String name) {
+        if (name == null) return DOUBLE;
+        name = name.trim().toLowerCase();
+        if (name.equals("float")) return FLOAT;
+        if (name.equals("fixed")) return FIXED;
+        if (name.equals("double") || name.isEmpty()) return DOUBLE;
+        throw new IllegalArgumentException("Unknown rank_encoding: " + name);
+    }
+    
+    /* a structure record from the PR text and list text inside bytes */
+    public void setStructure(byte[] bytes, int prStart, int prLen, int listStart, int listLen) {
+        this.type = STRUCTURE;
+        this.value = 0.0;
+        this.pr.set(bytes, prStart, prLen);
+        this.toIds.set(bytes, listStart, listLen);
+    }
+    
+    public void setContribution(double pr, byte encoding) {
+        this.type = encoding;
+        this.value = pr;
+        // out-of-range values cannot be held by the fixed-point int
+        if (encoding == FIXED && !(pr >= 0 && pr * FIXED_SCALE < Integer.MAX_VALUE)) {
+            this.type = FLOAT;
+        }
+    }
+    
+    public boolean isStructure() {
+        return type == STRUCTURE;
+    }
+    
+    /* the contribution value */
+    public double get() {
+        return value;
+    }
+    
+    /* PR text of the structure record */
+    public Text getPr() {
+        return pr;
+    }
+    
+    public Text getToIds() {
+        return toIds;
+    }
+    
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(type);
+        switch (type) {
+        case STRUCTURE:
+            pr.write(out);
+            toIds.write(out);
+            break;
+        case FLOAT:
+            out.writeFloat((float) value);
+            break;
+        case FIXED:
+            WritableUtils.writeVInt(out, (int) Math.round(value * FIXED_SCALE));
+            break;
+        default:
+            out.writeDouble(value);
+        }
+    }
+    
+    public void readFields(DataInput in) throws IOException {
+        type = in.readByte();
+        switch (type) {
+        case STRUCTURE:
+            value = 0.0;
+            pr.readFields(in);
+            toIds.readFields(in);
+            break;
+        case FLOAT:
+            value = in.readFloat();
+            break;
+        case FIXED:
+            value = WritableUtils.readVInt(in) / FIXED_SCALE;
+            break;
+        case DOUBLE:
+            value = in.readDouble();
+            break;
+        default:
+            throw new IOException("Unknown RankWritable type: " + type);
+        }
+    }
+    
+    /* write v into buf (at least 32 bytes) in plain decimal notation rounded
+       to 15 significant digits, return the length; parseRank reads it back
+       without a String. Values outside 1e-7..1e14 go through Double.toString */
+    public static int formatRank(double v, byte[] buf) {
+        double a = Math.abs(v);
+        if (!(a >= 1e-7 && a < 1e14)) {
+            byte[] b = String.valueOf(v).getBytes();
+            System.arraycopy(b, 0, buf, 0, b.length);
+            return b.length;
+        }
+        // k fraction digits leave 15 significant ones in m
+        int k = 14 - (int) Math.floor(Math.log10(a));
+        long m = Math.round(a * POW10[k]);
+        if (m >= 1000000000000000L) {
+            k--;
+            m = Math.round(a * POW10[k]);
+        } else if (m < 100000000000000L && k + 1 < POW10.length) {
+            k++;
+            m = Math.round(a * POW10[k]);
+        }
+        int digits = 1;
+        for (long t = m / 10; t > 0; t /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, k + 1);
+        int len = (v < 0 ? 1 : 0) + digits + (k > 0 ? 1 : 0);
+        if (v < 0) buf[0] = '-';
+        int pos = len - 1;
+        for (int i = 0; i < digits; i++) {
+            if (k > 0 && i == k) buf[pos--] = '.';
+            buf[pos--] = (byte) ('0' + m % 10);
+            m /= 10;
+        }
+        if (k == 0) {
+            buf[len++] = '.';
+            buf[len++] = '0';
+        } else {
+            while (buf[len - 1] == '0' && buf[len - 2] != '.') len--;
+        }
+        return len;
+    }
+    
+    /* parse a PR in plain decimal notation from bytes; with at most 15
+       significant digits the digits and the power of ten are exact doubles, so
+       one division gives the correctly rounded value without a String */
+    public static double parseRank(byte[] bytes, int start, int len) throws IOException {
+        int i = start;
+        int end = start + len;
+        boolean negative = i < end && bytes[i] == '-';
+        if (negative) i++;
+        long m = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean dot = false;
+        boolean fast = i < end;
+        for (; i < end && fast; i++) {
+            byte b = bytes[i];
+            if (b == '.' && !dot) {
+                dot = true;
+                continue;
+            }
+            if (b < '0' || b > '9') {
+                fast = false;
+                break;
+            }
+            if (m > 0 || b != '0') digits++;
+            m = m * 10 + (b - '0');
+            if (dot) scale++;
+            if (digits > 15 || scale >= POW10.length) fast = false;
+        }
+        if (!fast) return Double.parseDouble(Text.decode(bytes, start, len));
+        double v = m / POW10[scale];
+        return negative ? -v : v;
+    }
+    
+    /* add v to acc = {sum, compensation} with Neumaier's summation; the
+       result is acc[0] + acc[1] */
+    public static void neumaierAdd(double[] acc, double v) {
+        double sum = acc[0] + v;
+        if (Math.abs(acc[0]) >= Math.abs(v)) {
+            acc[1] += (acc[0] - sum) + v;
+        } else {
+            acc[1] += (v - sum) + acc[0];
+        }
+        acc[0] = sum;
+    }
+    
+    public String toString() {
+        if (type == STRUCTURE) {
+            return "0$" + pr.toString() + "$" + toIds.toString();
+        }
+        return "1$" + String.valueOf(value);
+    }
+}